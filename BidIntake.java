@@ -0,0 +1,169 @@
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Non-blocking front end of one CourseManager, behind its
+ * enrollStudentInCourseAsync, modifyStudentEnrollmentCreditsAsync and
+ * dropStudentEnrollmentCourseAsync.
+ * <p>
+ * Each lock stripe of the manager is a partition with its own queue. Submitting
+ * only enqueues the request; at most one drain task per partition runs on the
+ * executor at a time, so every partition has a single writer. The writer takes the
+ * stripe lock once per micro-batch of up to MAX_BATCH requests, applies them in
+ * arrival order, and completes their futures after releasing the lock. Callers
+ * never block on a contended course, and a burst on one course costs one lock
+ * acquisition per batch instead of one per request. Successful requests go
+ * through the manager's CreditAudit, like synchronous ones, once the lock is
+ * released.
+ */
+class BidIntake {
+    static final int MAX_BATCH = 256;
+
+    private static final class Request {
+        final EnrollmentMetrics.Operation operation;
+        final Student student;
+        final Course course;
+        final int credits;
+        final long start;
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        Request(EnrollmentMetrics.Operation operation, Student student, Course course, int credits, long start) {
+            this.operation = operation;
+            this.student = student;
+            this.course = course;
+            this.credits = credits;
+            this.start = start;
+        }
+    }
+
+    private final class Partition implements Runnable {
+        final ConcurrentLinkedQueue<Request> queue = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        /**
+         * Only touched by the drain task holding scheduled.
+         */
+        final ArrayList<Request> batch = new ArrayList<>();
+        final RejectReason[] rejections = new RejectReason[MAX_BATCH];
+        final RuntimeException[] failures = new RuntimeException[MAX_BATCH];
+
+        void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
+
+        private void applyBatch() {
+            // Every course of the partition shares this stripe lock.
+            var lock = manager.lockOf(batch.get(0).course);
+            lock.lock();
+            try {
+                for (int i = 0; i < batch.size(); i++) {
+                    try {
+                        rejections[i] = apply(batch.get(i));
+                    } catch (RuntimeException e) {
+                        failures[i] = e;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            var metrics = manager.getMetrics();
+            for (int i = 0; i < batch.size(); i++) {
+                var request = batch.get(i);
+                if (failures[i] != null) {
+                    request.result.completeExceptionally(failures[i]);
+                } else {
+                    if (metrics.isEnabled()) {
+                        metrics.record(request.operation, rejections[i], System.nanoTime() - request.start);
+                    }
+                    RuntimeException violation = null;
+                    if (rejections[i] == null) {
+                        try {
+                            manager.audit(request.student);
+                        } catch (RuntimeException e) {
+                            violation = e;
+                        }
+                    }
+                    if (violation != null) {
+                        request.result.completeExceptionally(violation);
+                    } else {
+                        request.result.complete(rejections[i] == null);
+                    }
+                }
+                rejections[i] = null;
+                failures[i] = null;
+            }
+            batch.clear();
+        }
+
+        @Override
+        public void run() {
+            Request request;
+            while (batch.size() < MAX_BATCH && (request = queue.poll()) != null) {
+                batch.add(request);
+            }
+            if (!batch.isEmpty()) {
+                applyBatch();
+            }
+            scheduled.set(false);
+            // A request queued after the last poll may have seen scheduled still set.
+            if (!queue.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+
+    private final CourseManager manager;
+    private final Executor executor;
+    private final Partition[] partitions;
+
+    BidIntake(CourseManager manager, int stripes, Executor executor) {
+        this.manager = manager;
+        this.executor = executor;
+        partitions = new Partition[stripes];
+        for (int i = 0; i < stripes; i++) {
+            partitions[i] = new Partition();
+        }
+    }
+
+    private CompletableFuture<Boolean> submit(EnrollmentMetrics.Operation operation, Student student,
+                                              String courseId, int credits) {
+        var metrics = manager.getMetrics();
+        long start = metrics.isEnabled() ? System.nanoTime() : 0;
+        var course = manager.getCourse(courseId);
+        if (course == null) {
+            if (metrics.isEnabled()) {
+                metrics.record(operation, RejectReason.UNKNOWN_COURSE, System.nanoTime() - start);
+            }
+            return CompletableFuture.completedFuture(false);
+        }
+        var request = new Request(operation, student, course, credits, start);
+        var partition = partitions[manager.stripeOf(course)];
+        partition.queue.add(request);
+        partition.schedule();
+        return request.result;
+    }
+
+    CompletableFuture<Boolean> enroll(Student student, String courseId, int credits) {
+        return submit(EnrollmentMetrics.Operation.ENROLL, student, courseId, credits);
+    }
+
+    CompletableFuture<Boolean> modify(Student student, String courseId, int credits) {
+        return submit(EnrollmentMetrics.Operation.MODIFY, student, courseId, credits);
+    }
+
+    CompletableFuture<Boolean> drop(Student student, String courseId) {
+        return submit(EnrollmentMetrics.Operation.DROP, student, courseId, 0);
+    }
+
+    private RejectReason apply(Request request) {
+        return switch (request.operation) {
+            case ENROLL -> manager.enrollLocked(request.student, request.course, request.credits);
+            case MODIFY -> manager.modifyLocked(request.student, request.course, request.credits);
+            case DROP -> manager.dropLocked(request.student, request.course);
+        };
+    }
+}
@@ -0,0 +1,303 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Bids placed on one course, keyed by student ID, so that students equal by
+ * Student.equals share an entry. Entries are stored densely in slots 0..size-1
+ * with primitive int bids. An IntIndex maps the hash of the student ID to slot,
+ * so looking up, updating and removing a student's bid are all O(1); the hash is
+ * kept per slot, so probing compares ints and only a match touches the Student.
+ * Removing an entry moves the last entry into the freed slot, so slot order is
+ * not bidding order; each entry keeps an arrival number for that instead.
+ * <p>
+ * A CutoffTracker is kept in step with every change, so the cutoff at the
+ * course capacity is always known.
+ */
+class BidLedger {
+    private static final int MIN_CAPACITY = 8;
+
+    private Student[] students;
+    /**
+     * Hash key of the student in each slot, see keyOf.
+     */
+    private int[] keys;
+    private int[] bids;
+    /**
+     * Order in which the entries were added, increasing. A changed bid keeps its
+     * arrival.
+     */
+    private int[] arrivals;
+    private int nextArrival;
+    /**
+     * Round in which each entry was placed, e.g. the round a seat was won in. Null
+     * until an entry is added with a round, so the bids of a round do not pay for it.
+     */
+    private int[] rounds;
+    private int size;
+
+    /**
+     * Slots by the key in keys.
+     */
+    private IntIndex index;
+
+    private final CutoffTracker tracker;
+
+    /**
+     * Incremented on every change, so readers can tell whether a copy is stale.
+     */
+    private volatile long version;
+
+    public BidLedger() {
+        this(MIN_CAPACITY);
+    }
+
+    public BidLedger(int expectedSize) {
+        int capacity = Math.max(MIN_CAPACITY, expectedSize);
+        students = new Student[capacity];
+        keys = new int[capacity];
+        bids = new int[capacity];
+        arrivals = new int[capacity];
+        index = new IntIndex(capacity);
+        tracker = new CutoffTracker(this, capacity);
+    }
+
+    public CutoffTracker getTracker() {
+        return tracker;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Mark the course as changed without changing a bid, e.g. when its results
+     * change. Only called under the course lock.
+     */
+    public void touch() {
+        version++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Student getStudent(int slot) {
+        return students[slot];
+    }
+
+    public int getBid(int slot) {
+        return bids[slot];
+    }
+
+    /**
+     * Arrival number of the entry in slot. Entries added earlier have lower ones.
+     */
+    public int getArrival(int slot) {
+        return arrivals[slot];
+    }
+
+    /**
+     * Round in which the entry in slot was placed, or 0 if it was added without one.
+     */
+    public int getRound(int slot) {
+        return rounds == null ? 0 : rounds[slot];
+    }
+
+    /**
+     * The slots in arrival order, oldest first. O(n log n).
+     */
+    public int[] slotsByArrival() {
+        var slots = new int[size];
+        for (int slot = 0; slot < size; slot++) {
+            slots[slot] = slot;
+        }
+        sortByArrival(slots, size);
+        return slots;
+    }
+
+    /**
+     * Sort the first count of slots into arrival order.
+     */
+    public void sortByArrival(int[] slots, int count) {
+        var keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = (long) arrivals[slots[i]] << 32 | slots[i];
+        }
+        Arrays.sort(keys);
+        for (int i = 0; i < count; i++) {
+            slots[i] = (int) keys[i];
+        }
+    }
+
+    public void setBid(int slot, int bid) {
+        bids[slot] = bid;
+        tracker.update(slot);
+        version++;
+    }
+
+    public boolean contains(Student student) {
+        return indexOf(student) != IntIndex.NONE;
+    }
+
+    /**
+     * Get the slot holding the bid of student, or of a student equal to it, or -1
+     * if there is none.
+     */
+    public int indexOf(Student student) {
+        int key = keyOf(student);
+        for (int i = index.first(key); index.positionAt(i) != IntIndex.NONE; i = index.next(i)) {
+            int slot = index.positionAt(i);
+            if (keys[slot] == key && (students[slot] == student || students[slot].equals(student))) {
+                return slot;
+            }
+        }
+        return IntIndex.NONE;
+    }
+
+    /**
+     * Add a bid for a student who has no bid yet. Return the slot of the new bid.
+     */
+    public int add(Student student, int bid) {
+        return add(student, bid, 0);
+    }
+
+    /**
+     * Add a bid placed in round for a student who has no bid yet. Return the slot
+     * of the new bid.
+     */
+    public int add(Student student, int bid, int round) {
+        if (size == students.length) {
+            grow();
+        }
+        if (nextArrival == Integer.MAX_VALUE) {
+            renumberArrivals();
+        }
+        int slot = size++;
+        students[slot] = student;
+        keys[slot] = keyOf(student);
+        bids[slot] = bid;
+        arrivals[slot] = nextArrival++;
+        if (round != 0 && rounds == null) {
+            rounds = new int[students.length];
+        }
+        if (rounds != null) {
+            rounds[slot] = round;
+        }
+        index.insert(slot, keys);
+        tracker.insert(slot);
+        version++;
+        return slot;
+    }
+
+    /**
+     * Remove the bid in slot. The last entry is moved into the freed slot.
+     */
+    public void removeAt(int slot) {
+        tracker.remove(slot);
+        index.delete(slot, keys);
+        int last = --size;
+        if (slot != last) {
+            index.move(last, slot, keys);
+            students[slot] = students[last];
+            keys[slot] = keys[last];
+            bids[slot] = bids[last];
+            arrivals[slot] = arrivals[last];
+            if (rounds != null) {
+                rounds[slot] = rounds[last];
+            }
+            tracker.move(last, slot);
+        }
+        students[last] = null;
+        version++;
+    }
+
+    /**
+     * Students with bids, in slot order, which is not bidding order once a bid was
+     * removed. Read-only view; contains and indexOf go through the index, so they
+     * are O(1) and follow Student.equals.
+     */
+    public List<Student> studentView() {
+        return new AbstractList<>() {
+            @Override
+            public Student get(int index) {
+                return students[checkSlot(index)];
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public int indexOf(Object o) {
+                return o instanceof Student ? BidLedger.this.indexOf((Student) o) : IntIndex.NONE;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return indexOf(o) != IntIndex.NONE;
+            }
+        };
+    }
+
+    /**
+     * Bids in slot order, matching studentView. Read-only view.
+     */
+    public List<Integer> bidView() {
+        return new AbstractList<>() {
+            @Override
+            public Integer get(int index) {
+                return bids[checkSlot(index)];
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private int checkSlot(int slot) {
+        if (slot < 0 || slot >= size) {
+            throw new IndexOutOfBoundsException("Slot " + slot + ", size " + size);
+        }
+        return slot;
+    }
+
+    private void grow() {
+        int capacity = students.length * 2;
+        students = Arrays.copyOf(students, capacity);
+        keys = Arrays.copyOf(keys, capacity);
+        bids = Arrays.copyOf(bids, capacity);
+        arrivals = Arrays.copyOf(arrivals, capacity);
+        if (rounds != null) {
+            rounds = Arrays.copyOf(rounds, capacity);
+        }
+        tracker.grow(capacity);
+        index = new IntIndex(capacity);
+        for (int slot = 0; slot < size; slot++) {
+            index.insert(slot, keys);
+        }
+    }
+
+    /**
+     * Number the entries 0..size-1 again, keeping their order, once the counter
+     * runs out.
+     */
+    private void renumberArrivals() {
+        var slots = slotsByArrival();
+        for (int i = 0; i < slots.length; i++) {
+            arrivals[slots[i]] = i;
+        }
+        nextArrival = slots.length;
+    }
+
+    /**
+     * Hash of the student ID, which Student.equals compares. A copy of a student,
+     * registered or not, finds the entry of the original.
+     */
+    private static int keyOf(Student student) {
+        return student.getStudentID().hashCode();
+    }
+}
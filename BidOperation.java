@@ -0,0 +1,46 @@
+/**
+ * One entry of a student's bid sheet, submitted through
+ * {@link CourseManager#submitBids}.
+ */
+public class BidOperation {
+    public enum Type {
+        ENROLL, MODIFY, DROP
+    }
+
+    private final Type type;
+    private final String courseId;
+    private final int credits;
+
+    private BidOperation(Type type, String courseId, int credits) {
+        this.type = type;
+        this.courseId = courseId;
+        this.credits = credits;
+    }
+
+    public static BidOperation enroll(String courseId, int credits) {
+        return new BidOperation(Type.ENROLL, courseId, credits);
+    }
+
+    public static BidOperation modify(String courseId, int credits) {
+        return new BidOperation(Type.MODIFY, courseId, credits);
+    }
+
+    public static BidOperation drop(String courseId) {
+        return new BidOperation(Type.DROP, courseId, 0);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getCourseId() {
+        return courseId;
+    }
+
+    /**
+     * The credits bid. Always 0 for DROP.
+     */
+    public int getCredits() {
+        return credits;
+    }
+}
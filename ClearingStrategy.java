@@ -0,0 +1,46 @@
+import java.util.function.ToLongFunction;
+
+/**
+ * Decides, course by course, who gets the seats left when bids tie at the cutoff
+ * of finalizeEnrollments. Every bid above the cutoff is admitted first; the
+ * strategy is only asked when more students are tied at the cutoff bid than
+ * seats remain. Set with CourseManager.setClearingStrategy.
+ */
+@FunctionalInterface
+public interface ClearingStrategy {
+    /**
+     * Drop every student tied at the cutoff ("same credit, same drop"), even if
+     * seats stay empty. The default.
+     */
+    ClearingStrategy DROP_ALL_TIES = (courseId, tied, count, seats) -> 0;
+
+    /**
+     * Admit every student tied at the cutoff, overfilling the course.
+     */
+    ClearingStrategy ADMIT_ALL_TIES = (courseId, tied, count, seats) -> count;
+
+    /**
+     * Choose which of the count students in tied, all tied at the cutoff bid of
+     * courseId, are admitted, given that seats of them fit (seats < count). Move
+     * the admitted students to the front of tied and return how many they are.
+     * Called under the lock of the course, once per course per finalization.
+     */
+    int admitTied(String courseId, Student[] tied, int count, int seats);
+
+    /**
+     * Fill the seats by a lottery among the tied students. Each student draws a
+     * number from seed, the course and their student ID, so the outcome does not
+     * depend on the order the bids arrived in.
+     */
+    static ClearingStrategy lottery(long seed) {
+        return new RankedClearing(null, seed);
+    }
+
+    /**
+     * Fill the seats with the tied students of highest seniority, drawing lots
+     * with seed among students of equal seniority.
+     */
+    static ClearingStrategy seniority(ToLongFunction<Student> seniority, long seed) {
+        return new RankedClearing(seniority, seed);
+    }
+}
@@ -1,48 +1,143 @@
 import java.util.ArrayList;
+import java.util.List;
 
 class Course {
-    private String courseID;
+    private final String courseID;
     private String courseName;
     private int maxCapacity;
     private CourseManager courseManager;
-    private ArrayList<Student> enrollStudent;
-    private ArrayList<Integer> credits;
+    /**
+     * Students who bid credits for the course and the corresponding credits bid.
+     */
+    private BidLedger bids;
+    /**
+     * Students holding a seat from an earlier round, with the bid they paid.
+     */
+    private final BidLedger seats;
+    /**
+     * Students who lost in an earlier round, with their losing bid, best first.
+     * Their credits were refunded; a freed seat goes to the best of them who can
+     * still pay the bid.
+     */
+    private final BidLedger waitlist;
     private ArrayList<Student> successStudents;
+    /**
+     * Dense index in the CourseManager, assigned by addCourse. -1 until registered.
+     */
+    private int id = -1;
+    /**
+     * Whether bids or capacity changed since successStudents were last computed.
+     * Guarded by the course lock.
+     */
+    private boolean dirty;
 
     public Course(String courseID, String courseName, int maxCapacity) {
         this.courseID = courseID;
         this.courseName = courseName;
         this.maxCapacity = maxCapacity;
         this.courseManager = null;
-        this.enrollStudent = new ArrayList<>();
-        this.credits = new ArrayList<>();
+        this.bids = new BidLedger();
+        this.bids.getTracker().setCapacity(maxCapacity);
+        this.seats = new BidLedger();
+        // Every entry is left out, so the root of the tracker is the best one.
+        this.waitlist = new BidLedger();
         this.successStudents = new ArrayList<>();
     }
 
+    /**
+     * Replace the bidding students. Bids are kept by position; students beyond the
+     * previous number of bids start with a bid of 0.
+     */
     public void setEnrollStudent(ArrayList<Student> enrollStudent) {
-        this.enrollStudent = enrollStudent;
+        var ledger = new BidLedger(enrollStudent.size());
+        ledger.getTracker().setCapacity(getOpenSeats());
+        for (int i = 0; i < enrollStudent.size(); i++) {
+            ledger.add(enrollStudent.get(i), i < bids.size() ? bids.getBid(i) : 0);
+        }
+        this.bids = ledger;
+        changed();
     }
 
+    /**
+     * Replace the bids by position, matching the order of getEnrollStudent.
+     */
     public void setCredits(ArrayList<Integer> credits) {
-        this.credits = credits;
+        for (int i = 0; i < Math.min(credits.size(), bids.size()); i++) {
+            bids.setBid(i, credits.get(i));
+        }
+        changed();
     }
 
     public void setCourseManager(CourseManager courseManager) {
         this.courseManager = courseManager;
     }
 
-    public ArrayList<Integer> getCredits() {
-        return credits;
+    int getId() {
+        return id;
     }
 
-    public ArrayList<Student> getEnrollStudent() {
-        return enrollStudent;
+    void setId(int id) {
+        this.id = id;
+    }
+
+    boolean isDirty() {
+        return dirty;
+    }
+
+    void setDirty(boolean dirty) {
+        this.dirty = dirty;
+    }
+
+    private void changed() {
+        if (courseManager != null) {
+            courseManager.markDirty(this);
+        }
+    }
+
+    public BidLedger getBids() {
+        return bids;
+    }
+
+    /**
+     * Read-only view of the bids, in the same order as getEnrollStudent.
+     */
+    public List<Integer> getCredits() {
+        return bids.bidView();
+    }
+
+    /**
+     * Read-only view of the students who bid on this course. The order is that of
+     * the ledger slots: bidding order until a bid is dropped, which moves the last
+     * bidder into its place. getSuccessStudents keeps bidding order among equal
+     * bids.
+     */
+    public List<Student> getEnrollStudent() {
+        return bids.studentView();
     }
 
     public String getCourseID() {
         return courseID;
     }
 
+    public String getCourseName() {
+        return courseName;
+    }
+
+    /**
+     * Courses are equal when their course IDs are, which are unique within a
+     * manager, so a course can key hash-based collections before and after it is
+     * registered.
+     */
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof Course && courseID.equals(((Course) o).courseID);
+    }
+
+    @Override
+    public int hashCode() {
+        return courseID.hashCode();
+    }
+
     public ArrayList<Student> getSuccessStudents() {
         return successStudents;
     }
@@ -54,4 +149,47 @@ class Course {
     public int getMaxCapacity() {
         return maxCapacity;
     }
+
+    /**
+     * Change the number of seats. Use CourseManager.setMaxCapacity to do so while
+     * bids may be placed concurrently.
+     */
+    public void setMaxCapacity(int maxCapacity) {
+        this.maxCapacity = maxCapacity;
+        updateOpenSeats();
+        changed();
+    }
+
+    public BidLedger getSeats() {
+        return seats;
+    }
+
+    public BidLedger getWaitlist() {
+        return waitlist;
+    }
+
+    /**
+     * Changes whenever the bids, seats or waitlist change, so readers can tell
+     * whether a copy of the course is stale. Every ledger version only grows.
+     */
+    long getVersion() {
+        return bids.getVersion() + seats.getVersion() + waitlist.getVersion();
+    }
+
+    /**
+     * Seats left for the bids of the current round.
+     */
+    public int getOpenSeats() {
+        return Math.max(0, maxCapacity - seats.size());
+    }
+
+    /**
+     * Give the bids of the current round as many seats as are not yet held. Call
+     * after seats or maxCapacity change. Bumps the ledger version, since the cutoff
+     * may move without any bid changing.
+     */
+    void updateOpenSeats() {
+        bids.getTracker().setCapacity(getOpenSeats());
+        bids.touch();
+    }
 }
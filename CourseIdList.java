@@ -0,0 +1,166 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Ordered list of courses stored as their dense IDs in a CourseManager, one int
+ * per entry. Replaces an ArrayList of Course references in Student: no array is
+ * allocated until the first entry, and it grows by half instead of starting at
+ * ten entries.
+ * <p>
+ * Short lists are scanned. Once a list holds more than INDEX_THRESHOLD courses,
+ * an IntIndex maps each ID to its position, so contains and indexOf
+ * are O(1). Removal keeps the order, which getEnrolledCoursesWithCredits shows,
+ * so it still moves the later entries down by one, and renumbers their buckets
+ * in place.
+ */
+class CourseIdList {
+    private static final int[] EMPTY = new int[0];
+    static final int INDEX_THRESHOLD = 16;
+
+    private int[] ids = EMPTY;
+    private int size;
+
+    /**
+     * Positions keyed by ids[position], or null while the list is scanned.
+     */
+    private IntIndex index;
+
+    public int size() {
+        return size;
+    }
+
+    public int get(int i) {
+        return ids[i];
+    }
+
+    public void add(int id) {
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(4, size + (size >> 1)));
+            if (index != null) {
+                reindex();
+            }
+        }
+        ids[size++] = id;
+        if (index != null) {
+            index.insert(size - 1, ids);
+        } else if (size > INDEX_THRESHOLD) {
+            reindex();
+        }
+    }
+
+    /**
+     * Insert id before the first larger entry, keeping a sorted list sorted.
+     * Appending in ascending order costs no shifting.
+     */
+    public void addSorted(int id) {
+        add(id);
+        int i = size - 1;
+        while (i > 0 && ids[i - 1] > id) {
+            ids[i] = ids[i - 1];
+            i--;
+        }
+        ids[i] = id;
+        if (index != null && i != size - 1) {
+            reindex();
+        }
+    }
+
+    /**
+     * Remove id, keeping the order of the others. Return whether it was found.
+     */
+    public boolean remove(int id) {
+        int i = indexOf(id);
+        if (i < 0) {
+            return false;
+        }
+        if (index != null) {
+            if (size - 1 <= INDEX_THRESHOLD / 2) {
+                index = null;
+            } else {
+                index.delete(i, ids);
+                for (int position = i + 1; position < size; position++) {
+                    index.move(position, position - 1, ids);
+                }
+            }
+        }
+        System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+        size--;
+        return true;
+    }
+
+    /**
+     * Get the position of id, or -1 if it is not in the list.
+     */
+    public int indexOf(int id) {
+        if (index == null) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == id) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        return index.find(id, ids);
+    }
+
+    public boolean contains(int id) {
+        return indexOf(id) >= 0;
+    }
+
+    public void clear() {
+        ids = EMPTY;
+        size = 0;
+        index = null;
+    }
+
+    /**
+     * Rebuild the index for the current entries, sized to the array capacity.
+     */
+    private void reindex() {
+        index = new IntIndex(ids.length);
+        for (int i = 0; i < size; i++) {
+            index.insert(i, ids);
+        }
+    }
+
+    /**
+     * Read-only view resolving the IDs to the courses of manager.
+     */
+    public List<Course> view(CourseManager manager) {
+        return new AbstractList<>() {
+            @Override
+            public Course get(int index) {
+                if (index < 0 || index >= size) {
+                    throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+                }
+                return manager.getCourse(ids[index]);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public int indexOf(Object o) {
+                if (!(o instanceof Course)) {
+                    return -1;
+                }
+                // Equal courses share the course ID, but may come from another manager.
+                var course = manager.getCourse(((Course) o).getCourseID());
+                return course == null ? -1 : CourseIdList.this.indexOf(course.getId());
+            }
+
+            @Override
+            public int lastIndexOf(Object o) {
+                return indexOf(o);
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return indexOf(o) >= 0;
+            }
+        };
+    }
+}
@@ -1,4 +1,18 @@
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class CourseManager {
     /**
@@ -13,15 +27,116 @@ public class CourseManager {
      */
     private ArrayList<Student> students;
 
+    /**
+     * Index of courses by courseID, kept in step with courses.
+     */
+    private HashMap<String, Course> courseIndex;
+
+    /**
+     * Index of students by studentID, kept in step with students.
+     */
+    private HashMap<String, Student> studentIndex;
+
     /**
      * Represent system open(true) or not(false).
      */
-    private boolean ifOpen;
+    private volatile boolean ifOpen;
+
+    /**
+     * Striped locks guarding the bids of each course. A course always maps to the
+     * same stripe, so bids on different courses rarely contend.
+     */
+    private final ReentrantLock[] courseLocks;
+
+    static final int DEFAULT_LOCK_STRIPES = 64;
+
+    /**
+     * Returned by lockedBid when the student has no bid on the course.
+     */
+    private static final int NO_BID = Integer.MIN_VALUE;
+
+    /**
+     * Journal that every change is logged to, or null if state is kept in memory
+     * only.
+     */
+    private volatile EnrollmentJournal journal;
+
+    /**
+     * The latest snapshot, whose student IDs the next snapshot reuses. Guarded by
+     * snapshotLock.
+     */
+    private TermSnapshot lastSnapshot;
+    /**
+     * The course copies of the latest snapshot, reused while their course is
+     * unchanged.
+     */
+    private volatile CourseSnapshot[] courseCopies;
+
+    private volatile EnrollmentMetrics metrics = EnrollmentMetrics.NOOP;
+
+    private volatile CreditAudit creditAudit;
+
+    /**
+     * Courses whose bids or capacity changed since they were last cleared.
+     */
+    private final ConcurrentLinkedQueue<Course> dirtyCourses = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Bidding round, starting at 1 and advanced by openNextRound.
+     */
+    private volatile int round = 1;
+
+    private volatile EnrollmentEventBus events;
+
+    private volatile BidIntake intake;
+
+    /**
+     * Index of the last finalization, or null before the first.
+     */
+    private volatile EnrollmentResults results;
+
+    private volatile int resultCacheSize;
+
+    private volatile ClearingStrategy clearingStrategy = ClearingStrategy.DROP_ALL_TIES;
+
+    private final Object snapshotLock = new Object();
+
+    private final Object resultsLock = new Object();
+
+    private final int courseIdBase;
+    private final int courseIdStride;
 
     public CourseManager() {
+        this(DEFAULT_LOCK_STRIPES);
+    }
+
+    /**
+     * Create a manager whose courses share lockStripes locks, rounded up to a power
+     * of two. Bidding methods may be called from many threads at once; courses and
+     * students must be registered before bidding starts.
+     */
+    public CourseManager(int lockStripes) {
+        this(lockStripes, 0, 1);
+    }
+
+    /**
+     * Create a manager whose i-th registered course gets the dense ID
+     * courseIdBase + i * courseIdStride, so that shards of a ShardedCourseManager
+     * hand out disjoint IDs.
+     */
+    CourseManager(int lockStripes, int courseIdBase, int courseIdStride) {
+        this.courseIdBase = courseIdBase;
+        this.courseIdStride = courseIdStride;
         ifOpen = true;
         courses = new ArrayList<>();
         students = new ArrayList<>();
+        courseIndex = new HashMap<>();
+        studentIndex = new HashMap<>();
+        int stripes = Integer.highestOneBit(Math.max(1, lockStripes) * 2 - 1);
+        courseLocks = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            courseLocks[i] = new ReentrantLock();
+        }
     }
 
     public ArrayList<Student> getStudents() {
@@ -32,8 +147,170 @@ public class CourseManager {
         return courses;
     }
 
+    /**
+     * Pre-size the registries for the given total numbers of students and courses,
+     * so that registering them does not repeatedly grow the lists and indexes.
+     */
+    public void ensureCapacity(int studentCount, int courseCount) {
+        students.ensureCapacity(studentCount);
+        courses.ensureCapacity(courseCount);
+        if (studentCount > studentIndex.size()) {
+            var index = new HashMap<String, Student>((int) (studentCount / 0.75f) + 1);
+            index.putAll(studentIndex);
+            studentIndex = index;
+        }
+        if (courseCount > courseIndex.size()) {
+            var index = new HashMap<String, Course>((int) (courseCount / 0.75f) + 1);
+            index.putAll(courseIndex);
+            courseIndex = index;
+        }
+    }
+
     public void setIfOpen(Boolean ifOpen) {
+        var journal = this.journal;
+        var record = journal == null ? null : journal.prepare(EnrollmentJournal.setOpenRecord(ifOpen));
         this.ifOpen = ifOpen;
+        if (record != null) {
+            journal.append(record);
+        }
+    }
+
+    public EnrollmentMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Report operation outcomes and latencies to metrics. EnrollmentMetrics.NOOP, the
+     * default, turns measuring off.
+     */
+    public void setMetrics(EnrollmentMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public CreditAudit getCreditAudit() {
+        return creditAudit;
+    }
+
+    /**
+     * Cross-check the credits of the student after a sampled fraction of successful
+     * enroll, modify, drop and submitBids calls. null, the default, turns checking
+     * off.
+     */
+    public void setCreditAudit(CreditAudit creditAudit) {
+        this.creditAudit = creditAudit;
+    }
+
+    public EnrollmentEventBus getEventBus() {
+        return events;
+    }
+
+    public ClearingStrategy getClearingStrategy() {
+        return clearingStrategy;
+    }
+
+    /**
+     * Decide ties at the cutoff with strategy from now on. Every course is
+     * recomputed by the next finalizeEnrollments. A journaled manager records the
+     * strategy, so it only accepts DROP_ALL_TIES, ADMIT_ALL_TIES and lottery
+     * strategies, and throws IllegalArgumentException for any other.
+     */
+    public void setClearingStrategy(ClearingStrategy strategy) {
+        var journal = this.journal;
+        var record = journal == null ? null : journal.prepare(EnrollmentJournal.setStrategyRecord(strategy));
+        clearingStrategy = strategy;
+        for (var course : getCourses()) {
+            var lock = lockOf(course);
+            lock.lock();
+            try {
+                markDirty(course);
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (record != null) {
+            journal.append(record);
+        }
+    }
+
+    /**
+     * Results of the last finalizeEnrollments, or null if bidding was never
+     * finalized. Each finalization that cleared a course replaces the index; the
+     * returned one never changes.
+     */
+    public EnrollmentResults getResults() {
+        return results;
+    }
+
+    /**
+     * Keep up to cacheSize rendered schedules in the results built by later
+     * finalizations, 0 (the default) for none.
+     */
+    public void setResultCacheSize(int cacheSize) {
+        resultCacheSize = cacheSize;
+    }
+
+    int getResultCacheSize() {
+        return resultCacheSize;
+    }
+
+    /**
+     * Publish every successful bid, drop and finalization result to events, or stop
+     * publishing if events is null.
+     */
+    public void setEventBus(EnrollmentEventBus events) {
+        this.events = events;
+    }
+
+    /**
+     * Apply the requests of the Async bidding methods on executor instead of the
+     * common ForkJoinPool. Set it before the first such request.
+     */
+    public synchronized void setIntakeExecutor(Executor executor) {
+        intake = new BidIntake(this, courseLocks.length, executor);
+    }
+
+    private BidIntake intake() {
+        var intake = this.intake;
+        if (intake == null) {
+            synchronized (this) {
+                if (this.intake == null) {
+                    this.intake = new BidIntake(this, courseLocks.length, ForkJoinPool.commonPool());
+                }
+                intake = this.intake;
+            }
+        }
+        return intake;
+    }
+
+    /**
+     * The journal changes are logged to, or null. Published by
+     * JournaledCourseManager, the only kind of manager that has one.
+     */
+    EnrollmentJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Log every later change to journal. Use EnrollmentJournal.recover to create a
+     * manager with its journal.
+     */
+    void setJournal(EnrollmentJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Take every lock stripe, in stripe order, which stops all bidding.
+     */
+    void lockAll() {
+        for (var lock : courseLocks) {
+            lock.lock();
+        }
+    }
+
+    void unlockAll() {
+        for (var lock : courseLocks) {
+            lock.unlock();
+        }
     }
 
     public boolean getIfOpen() {
@@ -46,8 +323,15 @@ public class CourseManager {
      * unique.
      */
     public void addStudent(Student student) {
+        var journal = this.journal;
+        var record = journal == null ? null : journal.prepare(EnrollmentJournal.addStudentRecord(student));
+        student.setId(students.size());
         students.add(student);
+        studentIndex.put(student.getStudentID(), student);
         student.setCourseManager(this);
+        if (record != null) {
+            journal.append(record);
+        }
     }
 
 
@@ -57,8 +341,16 @@ public class CourseManager {
      * unique.
      */
     public void addCourse(Course course) {
+        var journal = this.journal;
+        var record = journal == null ? null : journal.prepare(EnrollmentJournal.addCourseRecord(course));
+        course.setId(courseIdBase + courses.size() * courseIdStride);
         courses.add(course);
+        courseIndex.put(course.getCourseID(), course);
         course.setCourseManager(this);
+        markDirty(course);
+        if (record != null) {
+            journal.append(record);
+        }
     }
 
     /**
@@ -73,48 +365,389 @@ public class CourseManager {
      */
     public boolean enrollStudentInCourse(Student student, String courseId, int
             credits) {
+        var metrics = this.metrics;
+        long start = metrics.isEnabled() ? System.nanoTime() : 0;
+        var rejection = enroll(student, courseId, credits);
+        if (metrics.isEnabled()) {
+            metrics.record(EnrollmentMetrics.Operation.ENROLL, rejection, System.nanoTime() - start);
+        }
+        if (rejection == null) {
+            audit(student);
+        }
+        return rejection == null;
+    }
+
+    /**
+     * Enroll and return why it was refused, or null on success.
+     */
+    private RejectReason enroll(Student student, String courseId, int credits) {
         var course = getCourse(courseId);
-        if (!ifOpen || failedToEnroll(student, course, credits)) {
-            return false;
+        if (course == null) {
+            return RejectReason.UNKNOWN_COURSE;
         }
-        student.setCredits(student.getCredits() - credits);
-        student.getEnrollCourses().add(course);
-        course.getEnrollStudent().add(student);
-        course.getCredits().add(credits);
-        return true;
+        var lock = lockOf(course);
+        lock.lock();
+        try {
+            return enrollLocked(student, course, credits);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Body of enroll, for a caller that holds the lock of course. Also used by
+     * BidIntake to apply a micro-batch under one lock.
+     */
+    RejectReason enrollLocked(Student student, Course course, int credits) {
+        var rejection = enrollRejection(student, course, credits);
+        if (rejection != null) {
+            return rejection;
+        }
+        var journal = this.journal;
+        var record = journal == null ? null
+                : journal.prepare(EnrollmentJournal.bidRecord(EnrollmentJournal.ENROLL, student, course, credits));
+        // Commit and list the bid under the student's monitor, where CreditAudit
+        // expects to find the two agreeing.
+        synchronized (student) {
+            if (!student.tryDebit(credits)) {
+                return RejectReason.INSUFFICIENT_CREDITS;
+            }
+            applyEnroll(student, course, credits);
+        }
+        if (record != null) {
+            journal.append(record);
+        }
+        publish(EnrollmentEvent.Type.ENROLL, student, course, credits);
+        return null;
     }
 
     /**
      * Enrollment will only be successful if the course exists, the student has not
      * already enrolled, the credits is greater than 0, and they have enough credits to
-     * bid.
+     * bid. Return why it would fail, or null.
      */
-    private boolean failedToEnroll(Student student, Course course, int credits) {
-        if (course == null) {
-            return true;
+    private RejectReason enrollRejection(Student student, Course course, int credits) {
+        if (!ifOpen) {
+            return RejectReason.CLOSED;
         }
-        if (credits <= 0 || credits > student.getCredits()) {
-            return true;
+        if (credits <= 0) {
+            return RejectReason.INVALID_CREDITS;
+        }
+        if (credits > student.getCredits()) {
+            return RejectReason.INSUFFICIENT_CREDITS;
+        }
+        return course.getBids().contains(student) || course.getSeats().contains(student)
+                ? RejectReason.ALREADY_ENROLLED : null;
+    }
+
+    /**
+     * Take an immutable snapshot of the whole state, for readers that must not race
+     * with bidding. The snapshot is a consistent cut: courses, credits and ifOpen
+     * are read with every lock stripe held, as a checkpoint does, so no change is
+     * half seen. To keep that window short, the courses changed since the previous
+     * snapshot are first copied one lock at a time, and only those that changed
+     * again meanwhile are copied under all the locks.
+     */
+    public TermSnapshot snapshot() {
+        synchronized (snapshotLock) {
+            var copies = copyCourses();
+            lockAll();
+            try {
+                recopyCourses(copies);
+                int studentCount = students.size();
+                var ids = lastSnapshot == null ? new String[0] : lastSnapshot.getStudentIdArray();
+                if (ids.length != studentCount) {
+                    int known = ids.length;
+                    ids = Arrays.copyOf(ids, studentCount);
+                    for (int i = known; i < studentCount; i++) {
+                        ids[i] = students.get(i).getStudentID();
+                    }
+                }
+                var credits = new int[studentCount];
+                for (int i = 0; i < studentCount; i++) {
+                    credits[i] = students.get(i).getCredits();
+                }
+                lastSnapshot = new TermSnapshot(ifOpen, copies, ids, credits);
+            } finally {
+                unlockAll();
+            }
+            return lastSnapshot;
+        }
+    }
+
+    /**
+     * Copy the courses, each under its own lock, reusing the copies of the last
+     * snapshot whose course is unchanged.
+     */
+    CourseSnapshot[] copyCourses() {
+        var previous = courseCopies;
+        var copies = new CourseSnapshot[courses.size()];
+        for (int i = 0; i < copies.length; i++) {
+            var course = courses.get(i);
+            var old = previous != null && i < previous.length ? previous[i] : null;
+            if (old != null && old.getVersion() == course.getVersion()) {
+                copies[i] = old;
+                continue;
+            }
+            var lock = lockOf(course);
+            lock.lock();
+            try {
+                copies[i] = CourseSnapshot.of(course);
+            } finally {
+                lock.unlock();
+            }
         }
-        var enrollStudents = course.getEnrollStudent();
-        for (var enrollStudent : enrollStudents) {
-            if (enrollStudent.equals(student)) {
-                return true;
+        return copies;
+    }
+
+    /**
+     * Copy again the courses that changed since copyCourses. The caller holds every
+     * lock stripe, so the copies are then a consistent cut.
+     */
+    void recopyCourses(CourseSnapshot[] copies) {
+        for (int i = 0; i < copies.length; i++) {
+            var course = courses.get(i);
+            if (copies[i].getVersion() != course.getVersion()) {
+                copies[i] = CourseSnapshot.of(course);
             }
         }
+        courseCopies = copies;
+    }
+
+    /**
+     * Get the lock guarding the bids of course.
+     */
+    ReentrantLock lockOf(Course course) {
+        return courseLocks[stripeOf(course)];
+    }
+
+    /**
+     * Rank of the lock of course in the order in which callers taking several
+     * course locks take them.
+     */
+    int lockOrder(Course course) {
+        return stripeOf(course);
+    }
+
+    int getLockStripeCount() {
+        return courseLocks.length;
+    }
+
+    /**
+     * The manager whose queues and journal course belongs to: this one, or the
+     * owning shard of a router.
+     */
+    CourseManager ownerOf(Course course) {
+        return this;
+    }
+
+    int stripeOf(Course course) {
+        int h = course.getCourseID().hashCode();
+        return (h ^ (h >>> 16)) & (courseLocks.length - 1);
+    }
+
+    /**
+     * Record a new bid in course and student. Credits are not touched. The caller
+     * holds the lock of course.
+     */
+    private void applyEnroll(Student student, Course course, int credits) {
+        // A new bid replaces a place on the waitlist.
+        var waitlist = course.getWaitlist();
+        int waiting = waitlist.indexOf(student);
+        if (waiting >= 0) {
+            waitlist.removeAt(waiting);
+        }
+        synchronized (student) {
+            student.getEnrollCourseIds().add(course.getId());
+        }
+        course.getBids().add(student, credits);
+        markDirty(course);
+    }
+
+    /**
+     * Journal replay and bulk loading: enroll without checks, debiting the student
+     * even below zero. Bids on different courses may be journaled in a different
+     * order than they were charged, so replaying the checks could reject a bid that
+     * succeeded.
+     */
+    void restoreEnroll(Student student, Course course, int credits) {
+        student.refund(-credits);
+        applyEnroll(student, course, credits);
+    }
+
+    /**
+     * Journal replay: change a bid without checks.
+     */
+    void restoreModify(Student student, Course course, int credits) {
+        var bids = course.getBids();
+        int slot = bids.indexOf(student);
+        student.refund(bids.getBid(slot) - credits);
+        applyModify(course, slot, credits);
+    }
+
+    /**
+     * Journal replay: drop a bid, seat or waitlist entry without checks.
+     */
+    void restoreDrop(Student student, Course course) {
+        if (release(student, course, true)) {
+            refill(course);
+        }
+    }
+
+    /**
+     * Drop whatever student holds on course: a bid of the current round, a seat won
+     * in an earlier round, or a place on the waitlist. A bid or seat is refunded
+     * unless refund is false, for a caller that settles the credits itself. Return
+     * true if a seat was freed; the caller then passes course to refill, once it
+     * holds no student's monitor. The caller holds the lock of course.
+     */
+    private boolean release(Student student, Course course, boolean refund) {
+        var bids = course.getBids();
+        int slot = bids.indexOf(student);
+        if (slot >= 0) {
+            int credits = bids.getBid(slot);
+            if (refund) {
+                student.refund(credits);
+            }
+            applyDrop(student, course, slot);
+            publish(EnrollmentEvent.Type.DROP, student, course, credits);
+            return false;
+        }
+        var seats = course.getSeats();
+        slot = seats.indexOf(student);
+        if (slot >= 0) {
+            int credits = seats.getBid(slot);
+            if (refund) {
+                student.refund(credits);
+            }
+            seats.removeAt(slot);
+            publish(EnrollmentEvent.Type.DROP, student, course, credits);
+            course.getSuccessStudents().remove(student);
+            synchronized (student) {
+                student.getSuccessCourseIds().remove(course.getId());
+            }
+            return true;
+        }
+        var waitlist = course.getWaitlist();
+        waitlist.removeAt(waitlist.indexOf(student));
+        publish(EnrollmentEvent.Type.DROP, student, course, 0);
         return false;
     }
 
     /**
-     * Get course by ID.
+     * Offer a seat freed by release to the waitlist. promote takes the monitor of
+     * the promoted student, so the caller holds the lock of course and no student's
+     * monitor: two sheets each dropping a seat the other student waits for would
+     * otherwise take the two monitors in opposite orders.
      */
-    private Course getCourse(String courseId) {
-        for (var course : courses) {
-            if (course.getCourseID().equals(courseId)) {
-                return course;
+    private void refill(Course course) {
+        promote(course);
+        course.updateOpenSeats();
+        markDirty(course);
+    }
+
+    /**
+     * Run the CreditAudit, if any, on student after a successful operation. No
+     * course lock may be held.
+     */
+    void audit(Student student) {
+        var creditAudit = this.creditAudit;
+        if (creditAudit != null) {
+            creditAudit.sample(student);
+        }
+    }
+
+    /**
+     * Publish one event if an EnrollmentEventBus is attached.
+     */
+    private void publish(EnrollmentEvent.Type type, Student student, Course course, int credits) {
+        var events = this.events;
+        if (events != null) {
+            events.publish(type, student.getStudentID(), course.getCourseID(), credits);
+        }
+    }
+
+    /**
+     * Give a freed seat of course to the best waitlisted student who can still pay
+     * their bid: highest bid first, and among equal bids whoever bid first. Students
+     * who cannot pay are taken off the waitlist. Each step costs O(log n) in the
+     * waitlist. The caller holds the lock of course.
+     */
+    private void promote(Course course) {
+        var waitlist = course.getWaitlist();
+        var tracker = waitlist.getTracker();
+        while (tracker.hasCutoff()) {
+            int slot = tracker.getCutoffSlot();
+            var student = waitlist.getStudent(slot);
+            int bid = waitlist.getBid(slot);
+            waitlist.removeAt(slot);
+            boolean paid;
+            synchronized (student) {
+                paid = student.tryDebit(bid);
+                if (paid) {
+                    course.getSeats().add(student, bid, round);
+                    student.getSuccessCourseIds().addSorted(course.getId());
+                }
+            }
+            if (paid) {
+                course.getSuccessStudents().add(student);
+                publish(EnrollmentEvent.Type.ADMIT, student, course, bid);
+                return;
             }
         }
-        return null;
+    }
+
+    /**
+     * Remove the bid in slot from course and student. Credits are not touched. The
+     * caller holds the lock of course.
+     */
+    private void applyDrop(Student student, Course course, int slot) {
+        synchronized (student) {
+            student.getEnrollCourseIds().remove(course.getId());
+        }
+        course.getBids().removeAt(slot);
+        markDirty(course);
+    }
+
+    /**
+     * Change the bid in slot of course. Credits are not touched. The caller holds
+     * the lock of course.
+     */
+    private void applyModify(Course course, int slot, int credits) {
+        course.getBids().setBid(slot, credits);
+        markDirty(course);
+    }
+
+    /**
+     * Queue course for the next finalization, unless it is already queued. The
+     * caller holds the lock of course.
+     */
+    void markDirty(Course course) {
+        if (!course.isDirty()) {
+            course.setDirty(true);
+            dirtyCourses.add(course);
+        }
+    }
+
+    /**
+     * Get course by ID. Return null if no such course is registered.
+     */
+    public Course getCourse(String courseId) {
+        return courseIndex.get(courseId);
+    }
+
+    /**
+     * Get course by its dense ID, which follows the order of registration.
+     */
+    Course getCourse(int id) {
+        return courses.get((id - courseIdBase) / courseIdStride);
+    }
+
+    /**
+     * Get student by ID. Return null if no such student is registered.
+     */
+    public Student getStudent(String studentId) {
+        return studentIndex.get(studentId);
     }
 
     /**
@@ -130,38 +763,81 @@ public class CourseManager {
      */
     public boolean modifyStudentEnrollmentCredits(Student student, String courseId,
                                                   int credits) {
+        var metrics = this.metrics;
+        long start = metrics.isEnabled() ? System.nanoTime() : 0;
+        var rejection = modify(student, courseId, credits);
+        if (metrics.isEnabled()) {
+            metrics.record(EnrollmentMetrics.Operation.MODIFY, rejection, System.nanoTime() - start);
+        }
+        if (rejection == null) {
+            audit(student);
+        }
+        return rejection == null;
+    }
+
+    /**
+     * Modify a bid and return why it was refused, or null on success.
+     */
+    private RejectReason modify(Student student, String courseId, int credits) {
         var course = getCourse(courseId);
-        if (!ifOpen || failedToModify(student, course, credits)) {
-            return false;
+        if (course == null) {
+            return RejectReason.UNKNOWN_COURSE;
         }
+        var lock = lockOf(course);
+        lock.lock();
+        try {
+            return modifyLocked(student, course, credits);
+        } finally {
+            lock.unlock();
+        }
+    }
 
-        int index = course.getEnrollStudent().indexOf(student);
-        var courseCredits = course.getCredits();
-        int prevCredits = courseCredits.get(index);
+    /**
+     * Body of modify, for a caller that holds the lock of course.
+     */
+    RejectReason modifyLocked(Student student, Course course, int credits) {
+        var rejection = modifyRejection(student, course, credits);
+        if (rejection != null) {
+            return rejection;
+        }
 
-        student.setCredits(student.getCredits() + prevCredits - credits);
-        courseCredits.set(index, credits);
+        var bids = course.getBids();
+        int slot = bids.indexOf(student);
+        int prevCredits = bids.getBid(slot);
+        var journal = this.journal;
+        var record = journal == null ? null
+                : journal.prepare(EnrollmentJournal.bidRecord(EnrollmentJournal.MODIFY, student, course, credits));
 
-        return true;
+        // The balance may have dropped since the check, through a bid on another course.
+        if (!student.tryDebit(credits - prevCredits)) {
+            return RejectReason.INSUFFICIENT_CREDITS;
+        }
+        applyModify(course, slot, credits);
+        if (record != null) {
+            journal.append(record);
+        }
+        publish(EnrollmentEvent.Type.MODIFY, student, course, credits);
+        return null;
     }
 
     /**
      * The modification will only be successful if the course exists, the student is
      * currently enrolled in the course,and the new bid is within the student's
-     * available credits. This can be used to increase or decrease the bid.
+     * available credits. This can be used to increase or decrease the bid. Return
+     * why it would fail, or null.
      */
-    private boolean failedToModify(Student student, Course course, int credits) {
-        if (course == null) {
-            return true;
+    private RejectReason modifyRejection(Student student, Course course, int credits) {
+        if (!ifOpen) {
+            return RejectReason.CLOSED;
         }
+        int slot = course.getBids().indexOf(student);
         // Never enrolled.
-        if (!course.getEnrollStudent().contains(student)) {
-            return true;
+        if (slot < 0) {
+            return RejectReason.NOT_ENROLLED;
         }
 
-        int index = course.getEnrollStudent().indexOf(student);
-        int prevCredits = course.getCredits().get(index);
-        return student.getCredits() + prevCredits - credits < 0;
+        int prevCredits = course.getBids().getBid(slot);
+        return student.getCredits() + prevCredits - credits < 0 ? RejectReason.INSUFFICIENT_CREDITS : null;
     }
 
     /**
@@ -177,24 +853,297 @@ public class CourseManager {
      * otherwise, it returns false.
      */
     public boolean dropStudentEnrollmentCourse(Student student, String courseId) {
+        var metrics = this.metrics;
+        long start = metrics.isEnabled() ? System.nanoTime() : 0;
+        var rejection = drop(student, courseId);
+        if (metrics.isEnabled()) {
+            metrics.record(EnrollmentMetrics.Operation.DROP, rejection, System.nanoTime() - start);
+        }
+        if (rejection == null) {
+            audit(student);
+        }
+        return rejection == null;
+    }
+
+    /**
+     * Non-blocking form of enrollStudentInCourse. The request is queued for its
+     * course's partition and applied with others in a micro-batch; the future
+     * completes with what enrollStudentInCourse would have returned.
+     */
+    public CompletableFuture<Boolean> enrollStudentInCourseAsync(Student student, String courseId,
+                                                                 int credits) {
+        return intake().enroll(student, courseId, credits);
+    }
+
+    /**
+     * Non-blocking form of modifyStudentEnrollmentCredits, see
+     * enrollStudentInCourseAsync.
+     */
+    public CompletableFuture<Boolean> modifyStudentEnrollmentCreditsAsync(Student student, String courseId,
+                                                                         int credits) {
+        return intake().modify(student, courseId, credits);
+    }
+
+    /**
+     * Non-blocking form of dropStudentEnrollmentCourse, see
+     * enrollStudentInCourseAsync.
+     */
+    public CompletableFuture<Boolean> dropStudentEnrollmentCourseAsync(Student student, String courseId) {
+        return intake().drop(student, courseId);
+    }
+
+    /**
+     * Drop a bid and return why it was refused, or null on success.
+     */
+    private RejectReason drop(Student student, String courseId) {
         var course = getCourse(courseId);
-        if (!ifOpen || failToDrop(student, course)) {
-            return false;
+        if (course == null) {
+            return RejectReason.UNKNOWN_COURSE;
         }
+        var lock = lockOf(course);
+        lock.lock();
+        try {
+            return dropLocked(student, course);
+        } finally {
+            lock.unlock();
+        }
+    }
 
-        int index = course.getEnrollStudent().indexOf(student);
-        int credits = course.getCredits().get(index);
+    /**
+     * Body of drop, for a caller that holds the lock of course.
+     */
+    RejectReason dropLocked(Student student, Course course) {
+        var rejection = dropRejection(student, course);
+        if (rejection != null) {
+            return rejection;
+        }
 
-        student.setCredits(student.getCredits() + credits);
-        student.getEnrollCourses().remove(course);
-        course.getEnrollStudent().remove(student);
-        course.getCredits().remove(index);
+        var journal = this.journal;
+        var record = journal == null ? null : journal.prepare(EnrollmentJournal.dropRecord(student, course));
+        boolean freed = release(student, course, true);
+        if (record != null) {
+            journal.append(record);
+        }
+        if (freed) {
+            refill(course);
+        }
+        return null;
+    }
 
-        return true;
+    private RejectReason dropRejection(Student student, Course course) {
+        if (!ifOpen) {
+            return RejectReason.CLOSED;
+        }
+        return course.getBids().contains(student) || course.getSeats().contains(student)
+                || course.getWaitlist().contains(student) ? null : RejectReason.NOT_ENROLLED;
     }
 
-    private boolean failToDrop(Student student, Course course) {
-        return course == null || !course.getEnrollStudent().contains(student);
+    /**
+     * Applies a whole bid sheet of one student at once.
+     * <p>
+     * The operations are checked in order by the same rules as
+     * enrollStudentInCourse, modifyStudentEnrollmentCredits and
+     * dropStudentEnrollmentCourse, each one seeing the effect of the ones before
+     * it. If every operation passes, all of them are applied atomically and the
+     * student is charged the net change once; otherwise nothing is applied.
+     * Only available when ifOpen is true.
+     *
+     * @return For each operation, whether it passed. The sheet was applied only if
+     * every entry is true.
+     */
+    public boolean[] submitBids(Student student, List<BidOperation> operations) {
+        var results = applyBids(student, operations);
+        for (boolean passed : results) {
+            if (!passed) {
+                return results;
+            }
+        }
+        audit(student);
+        return results;
+    }
+
+    /**
+     * Body of submitBids.
+     */
+    private boolean[] applyBids(Student student, List<BidOperation> operations) {
+        var results = new boolean[operations.size()];
+        var targets = new Course[operations.size()];
+        // Lock order in the high half, operation index in the low half.
+        var order = new long[operations.size()];
+        int targetCount = 0;
+        for (int i = 0; i < targets.length; i++) {
+            targets[i] = getCourse(operations.get(i).getCourseId());
+            if (targets[i] != null) {
+                order[targetCount++] = (long) lockOrder(targets[i]) << 32 | i;
+            }
+        }
+        // Lock in ascending lock order so that concurrent batches cannot deadlock,
+        // also when a router's sheet spans several shards.
+        Arrays.sort(order, 0, targetCount);
+        var locks = new ReentrantLock[targetCount];
+        int locked = 0;
+        for (int i = 0; i < targetCount; i++) {
+            if (i == 0 || order[i] >>> 32 != order[i - 1] >>> 32) {
+                locks[locked] = lockOf(targets[(int) order[i]]);
+                locks[locked++].lock();
+            }
+        }
+        try {
+            if (!ifOpen) {
+                return results;
+            }
+            for (int i = 0; i < targetCount; i++) {
+                if (!ownerOf(targets[(int) order[i]]).ifOpen) {
+                    return results;
+                }
+            }
+            boolean passed = true;
+            int start = student.getCredits();
+            int balance = start;
+            // Bids as they would be after the operations so far; null for dropped.
+            var pending = new LinkedHashMap<Course, Integer>();
+            // Seats and waitlist places dropped, which go before any new bid on them.
+            var released = new LinkedHashSet<Course>();
+            for (int i = 0; i < targets.length; i++) {
+                var op = operations.get(i);
+                var course = targets[i];
+                Integer prev = null;
+                if (course != null) {
+                    if (pending.containsKey(course)) {
+                        prev = pending.get(course);
+                    } else {
+                        int slot = course.getBids().indexOf(student);
+                        prev = slot < 0 ? null : course.getBids().getBid(slot);
+                    }
+                }
+                boolean held = course != null && !released.contains(course)
+                        && (course.getSeats().contains(student) || course.getWaitlist().contains(student));
+                int credits = op.getCredits();
+                switch (op.getType()) {
+                    case ENROLL -> results[i] = course != null && prev == null
+                            && credits > 0 && credits <= balance && !(held && course.getSeats().contains(student));
+                    case MODIFY -> results[i] = prev != null && balance + prev - credits >= 0;
+                    case DROP -> results[i] = prev != null || held;
+                }
+                if (!results[i]) {
+                    passed = false;
+                    continue;
+                }
+                if (op.getType() == BidOperation.Type.DROP && prev == null) {
+                    var seats = course.getSeats();
+                    int slot = seats.indexOf(student);
+                    balance += slot < 0 ? 0 : seats.getBid(slot);
+                    released.add(course);
+                } else if (op.getType() == BidOperation.Type.DROP) {
+                    balance += prev;
+                    pending.put(course, null);
+                } else {
+                    balance += (prev == null ? 0 : prev) - credits;
+                    pending.put(course, credits);
+                }
+            }
+            var events = this.events;
+            int applied = 0;
+            var eventTypes = events == null ? null : new EnrollmentEvent.Type[pending.size()];
+            var eventCourses = events == null ? null : new Course[pending.size()];
+            var eventCredits = events == null ? null : new int[pending.size()];
+            var freed = new ArrayList<Course>(released.size());
+            // Encode the records before anything changes, see EnrollmentJournal.prepare.
+            var records = new byte[released.size() + pending.size()][];
+            if (passed) {
+                int r = 0;
+                for (var course : released) {
+                    var journal = ownerOf(course).journal;
+                    records[r++] = journal == null ? null
+                            : journal.prepare(EnrollmentJournal.dropRecord(student, course));
+                }
+                for (var entry : pending.entrySet()) {
+                    var course = entry.getKey();
+                    var journal = ownerOf(course).journal;
+                    boolean hasBid = course.getBids().contains(student);
+                    Integer credits = entry.getValue();
+                    if (journal == null || credits == null && !hasBid) {
+                        r++;
+                    } else if (credits == null) {
+                        records[r++] = journal.prepare(EnrollmentJournal.dropRecord(student, course));
+                    } else {
+                        records[r++] = journal.prepare(EnrollmentJournal.bidRecord(
+                                hasBid ? EnrollmentJournal.MODIFY : EnrollmentJournal.ENROLL, student, course, credits));
+                    }
+                }
+            }
+            int r = 0;
+            // Bids on courses outside this sheet may have spent credits meanwhile. The
+            // charge and the bids it pays for change together under the student's
+            // monitor, as CreditAudit expects.
+            synchronized (student) {
+                if (!passed || !student.tryDebit(start - balance)) {
+                    if (passed) {
+                        Arrays.fill(results, false);
+                    }
+                    return results;
+                }
+                // The charge above already refunded these seats. Freed seats are
+                // refilled after leaving the monitor, see refill.
+                for (var course : released) {
+                    var owner = ownerOf(course);
+                    if (owner.release(student, course, false)) {
+                        freed.add(course);
+                    }
+                    var record = records[r++];
+                    if (record != null) {
+                        owner.journal.append(record);
+                    }
+                }
+                for (var entry : pending.entrySet()) {
+                    var course = entry.getKey();
+                    var owner = ownerOf(course);
+                    var journal = owner.journal;
+                    var record = records[r++];
+                    int slot = course.getBids().indexOf(student);
+                    Integer credits = entry.getValue();
+                    EnrollmentEvent.Type type;
+                    int amount;
+                    if (credits == null) {
+                        if (slot < 0) {
+                            continue;
+                        }
+                        type = EnrollmentEvent.Type.DROP;
+                        amount = course.getBids().getBid(slot);
+                        owner.applyDrop(student, course, slot);
+                    } else if (slot < 0) {
+                        type = EnrollmentEvent.Type.ENROLL;
+                        amount = credits;
+                        owner.applyEnroll(student, course, credits);
+                    } else {
+                        type = EnrollmentEvent.Type.MODIFY;
+                        amount = credits;
+                        owner.applyModify(course, slot, credits);
+                    }
+                    if (record != null) {
+                        journal.append(record);
+                    }
+                    if (events != null) {
+                        eventTypes[applied] = type;
+                        eventCourses[applied] = course;
+                        eventCredits[applied] = amount;
+                    }
+                    applied++;
+                }
+            }
+            for (var course : freed) {
+                ownerOf(course).refill(course);
+            }
+            if (events != null) {
+                events.publish(applied, (event, i) -> event.set(eventTypes[i], student.getStudentID(),
+                        eventCourses[i].getCourseID(), eventCredits[i]));
+            }
+            return results;
+        } finally {
+            for (int i = 0; i < locked; i++) {
+                locks[i].unlock();
+            }
+        }
     }
 
     /**
@@ -204,41 +1153,388 @@ public class CourseManager {
      * corresponding list in Student and Course should be updated.
      * Only successStudents in class Course and successCourses in class Student need
      * to be updated.
+     * <p>
+     * Students tied at the cutoff bid are admitted or dropped by the
+     * ClearingStrategy, DROP_ALL_TIES unless set otherwise.
+     * <p>
+     * Only courses whose bids or capacity changed since they were last cleared are
+     * recomputed, replacing their previous results, so calling this again is cheap
+     * and never duplicates entries.
      */
     public void finalizeEnrollments() {
+        var journal = this.journal;
+        var record = journal == null ? null : journal.prepare(EnrollmentJournal.finalizeRecord());
+        ifOpen = false;
+        var dirty = drainDirtyCourses();
+        for (var course : dirty) {
+            clearCourseLocked(course);
+        }
+        buildResults(dirty);
+        // Appended after every course lock has been taken once, so that bids which
+        // were in flight when ifOpen was cleared come before it in the journal.
+        if (record != null) {
+            journal.append(record);
+        }
+    }
+
+    /**
+     * Same as finalizeEnrollments, but clears the changed courses in parallel on
+     * pool. successCourses are kept sorted by course, so the result is identical to
+     * the sequential path.
+     */
+    public void finalizeEnrollments(ForkJoinPool pool) {
+        var journal = this.journal;
+        var record = journal == null ? null : journal.prepare(EnrollmentJournal.finalizeRecord());
         ifOpen = false;
+        var dirty = drainDirtyCourses();
+        pool.invoke(new ClearTask(dirty, 0, dirty.length));
+        buildResults(dirty);
+        // Appended after every course lock has been taken once, so that bids which
+        // were in flight when ifOpen was cleared come before it in the journal.
+        if (record != null) {
+            journal.append(record);
+        }
+    }
+
+    /**
+     * Change the number of seats of courseId. The course is recomputed by the next
+     * finalizeEnrollments. Return false if the course does not exist.
+     */
+    public boolean setMaxCapacity(String courseId, int maxCapacity) {
+        var course = getCourse(courseId);
+        if (course == null) {
+            return false;
+        }
+        var lock = lockOf(course);
+        lock.lock();
+        try {
+            var journal = this.journal;
+            var record = journal == null ? null
+                    : journal.prepare(EnrollmentJournal.setCapacityRecord(course, maxCapacity));
+            course.setMaxCapacity(maxCapacity);
+            if (record != null) {
+                journal.append(record);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Close the current round and open the next one. The winners of the round keep
+     * their seats and the credits they bid. Every losing bid is refunded and moved
+     * to the waitlist of its course, so a seat freed by a later drop goes straight
+     * to the best waitlisted student. Courses with seats left take new bids.
+     */
+    public void openNextRound() {
+        finalizeEnrollments();
+        var journal = this.journal;
+        var record = journal == null ? null : journal.prepare(EnrollmentJournal.nextRoundRecord());
         for (var course : courses) {
-            var enrollStudent = course.getEnrollStudent();
-            var credits = course.getCredits();
+            var lock = lockOf(course);
+            lock.lock();
+            try {
+                advanceRound(course);
+            } finally {
+                lock.unlock();
+            }
+        }
+        round++;
+        if (record != null) {
+            journal.append(record);
+        }
+        ifOpen = true;
+    }
+
+    /**
+     * Seat the winners of course and move its other bids to the waitlist. The
+     * caller holds the lock of course, which has just been cleared.
+     */
+    private void advanceRound(Course course) {
+        var bids = course.getBids();
+        var seats = course.getSeats();
+        for (var student : course.getSuccessStudents()) {
+            int slot = bids.indexOf(student);
+            if (slot >= 0) {
+                seats.add(student, bids.getBid(slot), round);
+                applyDrop(student, course, slot);
+            }
+        }
+        // Waitlist in bidding order, so that equal bids are promoted first come,
+        // first served however the slots happen to be laid out.
+        var waitlist = course.getWaitlist();
+        for (int slot : bids.slotsByArrival()) {
+            var student = bids.getStudent(slot);
+            int bid = bids.getBid(slot);
+            student.refund(bid);
+            waitlist.add(student, bid, round);
+        }
+        while (bids.size() > 0) {
+            int slot = bids.size() - 1;
+            applyDrop(bids.getStudent(slot), course, slot);
+        }
+        course.updateOpenSeats();
+    }
+
+    public int getRound() {
+        return round;
+    }
 
-            var temp = new ArrayList<>(enrollStudent);
-            enrollStudent.sort((s1, s2) -> {
-                int n1 = temp.indexOf(s1);
-                int n2 = temp.indexOf(s2);
-                return credits.get(n2) - credits.get(n1);
-            });
-            credits.sort((c1, c2) -> c2 - c1);
+    /**
+     * Snapshot restore: continue at round.
+     */
+    void restoreRound(int round) {
+        this.round = round;
+    }
 
-            var successStudents = course.getSuccessStudents();
-            int maxCap = course.getMaxCapacity();
-            for (int i = 0; i < Math.min(maxCap, enrollStudent.size()); i++) {
-                successStudents.add(enrollStudent.get(i));
-            }
-            if (maxCap < enrollStudent.size()) {
-                int lastCredit = credits.get(maxCap);
-                int end = successStudents.size() - 1;
-                while (!successStudents.isEmpty() && credits.get(end) == lastCredit) {
-                    successStudents.remove(end);
-                    end -= 1;
+    /**
+     * Take the queued courses, in registration order. Every lock is taken once
+     * first, so that bids which got a lock before ifOpen was cleared have queued
+     * their course.
+     */
+    private Course[] drainDirtyCourses() {
+        for (var lock : courseLocks) {
+            lock.lock();
+            lock.unlock();
+        }
+        var dirty = new ArrayList<Course>();
+        Course course;
+        while ((course = dirtyCourses.poll()) != null) {
+            dirty.add(course);
+        }
+        var sorted = dirty.toArray(new Course[0]);
+        Arrays.sort(sorted, Comparator.comparingInt(Course::getId));
+        return sorted;
+    }
+
+    /**
+     * Update the index for getResults with the courses just cleared. Serialized, so
+     * that concurrent finalizations each add their courses to the other's index.
+     */
+    private void buildResults(Course[] cleared) {
+        synchronized (resultsLock) {
+            var previous = results;
+            results = previous == null ? EnrollmentResults.build(this, getCourses(), resultCacheSize)
+                    : EnrollmentResults.update(previous, this, cleared, resultCacheSize);
+        }
+    }
+
+    /**
+     * Clears courses[from, to), splitting the range until it is small enough.
+     */
+    private class ClearTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private static final int THRESHOLD = 64;
+
+        private final Course[] courses;
+        private final int from;
+        private final int to;
+
+        ClearTask(Course[] courses, int from, int to) {
+            this.courses = courses;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    clearCourseLocked(courses[i]);
                 }
+                return;
             }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ClearTask(courses, from, mid), new ClearTask(courses, mid, to));
+        }
+    }
 
+    /**
+     * Recompute the results of course under its lock: replace its successStudents
+     * and move it between the successCourses of the students who lost or won a seat.
+     */
+    private void clearCourseLocked(Course course) {
+        var metrics = this.metrics;
+        long start = metrics.isEnabled() ? System.nanoTime() : 0;
+        var lock = lockOf(course);
+        lock.lock();
+        try {
+            // Already recomputed by a concurrent finalization.
+            if (!course.isDirty()) {
+                return;
+            }
+            var successStudents = course.getSuccessStudents();
+            var previous = events == null ? null : new ArrayList<>(successStudents);
             for (var student : successStudents) {
-                student.getSuccessCourses().add(course);
+                synchronized (student) {
+                    student.getSuccessCourseIds().remove(course.getId());
+                }
+            }
+            successStudents.clear();
+            var winners = clearCourse(course);
+            var seats = course.getSeats();
+            var seated = new ArrayList<Student>(seats.size());
+            for (int slot : seats.slotsByArrival()) {
+                seated.add(seats.getStudent(slot));
+            }
+            winners.addAll(0, seated);
+            successStudents.addAll(winners);
+            for (var student : winners) {
+                synchronized (student) {
+                    student.getSuccessCourseIds().addSorted(course.getId());
+                }
+            }
+            if (previous != null) {
+                publishResults(course, previous, winners);
+            }
+            course.setDirty(false);
+            course.getBids().touch();
+        } finally {
+            lock.unlock();
+            if (metrics.isEnabled()) {
+                metrics.recordCourseFinalized(System.nanoTime() - start);
             }
         }
     }
 
+    /**
+     * Publish, as one batch, a REVOKE for every student course no longer admits and
+     * an ADMIT for every newly admitted one. The caller holds the lock of course.
+     */
+    private void publishResults(Course course, List<Student> previous, List<Student> winners) {
+        var events = this.events;
+        if (events == null) {
+            return;
+        }
+        var before = new HashSet<>(previous);
+        var after = new HashSet<>(winners);
+        var changed = new ArrayList<Student>();
+        for (var student : previous) {
+            if (!after.contains(student)) {
+                changed.add(student);
+            }
+        }
+        int revoked = changed.size();
+        for (var student : winners) {
+            if (!before.contains(student)) {
+                changed.add(student);
+            }
+        }
+        events.publish(changed.size(), (event, i) -> {
+            var student = changed.get(i);
+            if (i < revoked) {
+                event.set(EnrollmentEvent.Type.REVOKE, student.getStudentID(), course.getCourseID(), 0);
+            } else {
+                event.set(EnrollmentEvent.Type.ADMIT, student.getStudentID(), course.getCourseID(),
+                        admittedBid(course, student));
+            }
+        });
+    }
+
+    /**
+     * The bid with which student holds or won a seat of course.
+     */
+    static int admittedBid(Course course, Student student) {
+        int slot = course.getBids().indexOf(student);
+        if (slot >= 0) {
+            return course.getBids().getBid(slot);
+        }
+        var seats = course.getSeats();
+        return seats.getBid(seats.indexOf(student));
+    }
+
+    /**
+     * Get the students admitted to course, highest bid first and equal bids in the
+     * order they were placed. When there are more bidders than seats, every bid
+     * above the highest bid left out is admitted, and the ClearingStrategy picks
+     * who of the students tied at that bid fill the seats left, if any. It is
+     * given the tied students in the order they bid.
+     * <p>
+     * The course's CutoffTracker already holds the maxCapacity highest bids, so only
+     * those are sorted. Each is packed with its arrival rank into one long, bid in
+     * the high half, so primitive sorts order them. The tied bids are found from
+     * the tracker's heaps without looking at the other bids.
+     */
+    private ArrayList<Student> clearCourse(Course course) {
+        var bids = course.getBids();
+        var tracker = bids.getTracker();
+        int n = tracker.getTopSize();
+        var ranked = new int[n];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            int slot = tracker.getTop(i);
+            if (tracker.hasCutoff() && bids.getBid(slot) == tracker.getCutoffBid()) {
+                continue;
+            }
+            ranked[count++] = slot;
+        }
+        // Put the winners in arrival order, then sort by bid with ~rank in the low
+        // half so that equal bids come out in bidding order when read backwards.
+        bids.sortByArrival(ranked, count);
+        var keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = (long) bids.getBid(ranked[i]) << 32 | (~i & 0xffffffffL);
+        }
+        Arrays.sort(keys);
+
+        var winners = new ArrayList<Student>(count);
+        for (int i = count - 1; i >= 0; i--) {
+            winners.add(bids.getStudent(ranked[~(int) keys[i]]));
+        }
+        if (tracker.isCutoffTied()) {
+            var slots = tracker.getTiedSlots();
+            bids.sortByArrival(slots, slots.length);
+            var tied = new Student[slots.length];
+            for (int i = 0; i < slots.length; i++) {
+                tied[i] = bids.getStudent(slots[i]);
+            }
+            int admitted = clearingStrategy.admitTied(course.getCourseID(), tied, tied.length,
+                    tracker.getCapacity() - count);
+            for (int i = 0; i < Math.min(admitted, tied.length); i++) {
+                winners.add(tied[i]);
+            }
+        }
+        return winners;
+    }
+
+    /**
+     * The highest bid currently left out of courseId by its capacity: a student
+     * needs to bid more than this to get in. Return 0 if every bidder fits, or -1 if
+     * the course does not exist.
+     */
+    public int getCutoffBid(String courseId) {
+        var course = getCourse(courseId);
+        if (course == null) {
+            return -1;
+        }
+        var lock = lockOf(course);
+        lock.lock();
+        try {
+            var tracker = course.getBids().getTracker();
+            return tracker.hasCutoff() ? tracker.getCutoffBid() : 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Whether the lowest bid within the capacity of courseId equals the cutoff bid,
+     * so that all the students tied at it would be dropped if bidding closed now.
+     */
+    public boolean isCutoffTied(String courseId) {
+        var course = getCourse(courseId);
+        if (course == null) {
+            return false;
+        }
+        var lock = lockOf(course);
+        lock.lock();
+        try {
+            return course.getBids().getTracker().isCutoffTied();
+        } finally {
+            lock.unlock();
+        }
+    }
     /**
      * Retrieves a list of courses with associated credits for a given student.
      * Each String in the list includes the course ID and the points bid by the
@@ -253,14 +1549,108 @@ public class CourseManager {
         if (!ifOpen) {
             return null;
         }
-        var enrollCourses = student.getEnrollCourses();
         var result = new ArrayList<String>();
-        for (var course : enrollCourses) {
-            int index = course.getEnrollStudent().indexOf(student);
-            int credit = course.getCredits().get(index);
-            String s = String.format("%s: %d", course.getCourseID(), credit);
-            result.add(s);
+        Course course;
+        for (int i = 0; (course = enrolledCourse(student, i)) != null; i++) {
+            int credit = lockedBid(student, course);
+            if (credit != NO_BID) {
+                result.add(course.getCourseID() + ": " + credit);
+            }
         }
         return result;
     }
+
+    /**
+     * Allocation-free form of getEnrolledCoursesWithCredits. Fills courseBuffer[i]
+     * and creditBuffer[i] with the courses the student enrolled and the credits bid,
+     * up to the length of the shorter buffer.
+     *
+     * @return The number of courses the student enrolled, which may exceed the
+     * buffers, or -1 if ifOpen is false.
+     */
+    public int getEnrolledCredits(Student student, Course[] courseBuffer, int[] creditBuffer) {
+        if (!ifOpen) {
+            return -1;
+        }
+        int capacity = Math.min(courseBuffer.length, creditBuffer.length);
+        int count = 0;
+        Course course;
+        for (int i = 0; (course = enrolledCourse(student, i)) != null; i++) {
+            int credit = lockedBid(student, course);
+            if (credit == NO_BID) {
+                continue;
+            }
+            if (count < capacity) {
+                courseBuffer[count] = course;
+                creditBuffer[count] = credit;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Allocation-free form of getEnrolledCoursesWithCredits. Writes each entry to out
+     * in the same "courseID: enrollmentCredits" format, followed by a newline.
+     *
+     * @return false, writing nothing, if ifOpen is false; otherwise true.
+     */
+    public boolean appendEnrolledCoursesWithCredits(Student student, Appendable out) throws IOException {
+        if (!ifOpen) {
+            return false;
+        }
+        Course course;
+        for (int i = 0; (course = enrolledCourse(student, i)) != null; i++) {
+            int credit = lockedBid(student, course);
+            if (credit != NO_BID) {
+                out.append(course.getCourseID()).append(": ");
+                appendInt(out, credit);
+                out.append('\n');
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the i-th course of the student's enrollCourses, or null past the end.
+     * Courses are read one at a time instead of copying the list; an entry dropped
+     * concurrently may shift a later entry past the reader.
+     */
+    private Course enrolledCourse(Student student, int i) {
+        synchronized (student) {
+            var enrollCourses = student.getEnrollCourseIds();
+            return i < enrollCourses.size() ? getCourse(enrollCourses.get(i)) : null;
+        }
+    }
+
+    /**
+     * Get the bid of student on course under its lock, or NO_BID if the bid was
+     * dropped meanwhile.
+     */
+    private int lockedBid(Student student, Course course) {
+        var lock = lockOf(course);
+        lock.lock();
+        try {
+            var bids = course.getBids();
+            int slot = bids.indexOf(student);
+            return slot < 0 ? NO_BID : bids.getBid(slot);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void appendInt(Appendable out, int value) throws IOException {
+        if (value < 0) {
+            out.append('-');
+        }
+        // Work with the negative value, which also covers Integer.MIN_VALUE.
+        int negative = value < 0 ? value : -value;
+        int divisor = 1;
+        while (negative / divisor <= -10) {
+            divisor *= 10;
+        }
+        for (; divisor != 0; divisor /= 10) {
+            out.append((char) ('0' - negative / divisor % 10));
+        }
+    }
 }
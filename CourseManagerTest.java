@@ -1,4 +1,20 @@
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.AfterEach;
@@ -253,6 +269,1187 @@ class CourseManagerTest {
         assertFalse(student1.enrollCourse("c002", 100));
         courseManager.finalizeEnrollments();
     }
+
+    @Test
+    void testConcurrentBiddingConservesCredits() throws Exception {
+        var manager = new CourseManager(8);
+        var students = new ArrayList<Student>();
+        for (int i = 0; i < 50; i++) {
+            var student = new Student("cs" + i, "cs" + i + "@example.com", "Student " + i, 100);
+            students.add(student);
+            manager.addStudent(student);
+        }
+        for (int i = 0; i < 20; i++) {
+            manager.addCourse(new Course("cc" + i, "Course " + i, 5));
+        }
+
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        var start = new CountDownLatch(1);
+        var futures = new ArrayList<Future<?>>();
+        for (int t = 0; t < threads; t++) {
+            var random = new Random(t);
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < 20000; i++) {
+                    // Every thread works on every student, so one student bids on
+                    // several courses at the same time.
+                    var student = students.get(random.nextInt(students.size()));
+                    String courseId = "cc" + random.nextInt(20);
+                    switch (random.nextInt(3)) {
+                        case 0 -> student.enrollCourse(courseId, 1 + random.nextInt(60));
+                        case 1 -> student.modifyEnrollCredit(courseId, random.nextInt(60));
+                        default -> student.dropEnrollCourse(courseId);
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (var future : futures) {
+            future.get();
+        }
+        pool.shutdown();
+
+        for (var student : students) {
+            assertTrue(student.getCredits() >= 0);
+            int committed = 0;
+            for (var course : student.getEnrollCourses()) {
+                int index = course.getEnrollStudent().indexOf(student);
+                assertTrue(index >= 0);
+                committed += course.getCredits().get(index);
+            }
+            assertEquals(100, student.getCredits() + committed);
+        }
+        for (var course : manager.getCourses()) {
+            for (var student : course.getEnrollStudent()) {
+                assertTrue(student.getEnrollCourses().contains(course));
+            }
+        }
+    }
+
+    @Test
+    void testParallelFinalizeMatchesSequential() {
+        var sequential = randomTerm(7);
+        var parallel = randomTerm(7);
+        sequential.finalizeEnrollments();
+        var pool = new ForkJoinPool(4);
+        parallel.finalizeEnrollments(pool);
+        pool.shutdown();
+
+        assertFalse(parallel.getIfOpen());
+        for (int i = 0; i < sequential.getCourses().size(); i++) {
+            assertEquals(ids(sequential.getCourses().get(i).getSuccessStudents()),
+                    ids(parallel.getCourses().get(i).getSuccessStudents()));
+        }
+        for (int i = 0; i < sequential.getStudents().size(); i++) {
+            var expected = new ArrayList<String>();
+            for (var course : sequential.getStudents().get(i).getSuccessCourses()) {
+                expected.add(course.getCourseID());
+            }
+            var actual = new ArrayList<String>();
+            for (var course : parallel.getStudents().get(i).getSuccessCourses()) {
+                actual.add(course.getCourseID());
+            }
+            assertEquals(expected, actual);
+        }
+    }
+
+    private static CourseManager randomTerm(long seed) {
+        return randomTerm(new CourseManager(), seed);
+    }
+
+    private static CourseManager randomTerm(CourseManager manager, long seed) {
+        var random = new Random(seed);
+        for (int i = 0; i < 300; i++) {
+            manager.addCourse(new Course("rc" + i, "Course " + i, 1 + random.nextInt(10)));
+        }
+        for (int i = 0; i < 1000; i++) {
+            var student = new Student("rs" + i, "rs" + i + "@example.com", "Student " + i, 100);
+            manager.addStudent(student);
+            for (int j = 0; j < 5; j++) {
+                student.enrollCourse("rc" + random.nextInt(300), 1 + random.nextInt(20));
+            }
+        }
+        return manager;
+    }
+
+    private static List<String> ids(List<Student> students) {
+        var ids = new ArrayList<String>();
+        for (var student : students) {
+            ids.add(student.getStudentID());
+        }
+        return ids;
+    }
+
+    @Test
+    void testSubmitBidsAppliesWholeSheet() {
+        assertTrue(student1.enrollCourse("c001", 30));
+        boolean[] results = courseManager.submitBids(student1, List.of(
+                BidOperation.drop("c001"),
+                BidOperation.enroll("c002", 60),
+                BidOperation.enroll("c001", 40)));
+        assertArrayEquals(new boolean[]{true, true, true}, results);
+        assertEquals(0, student1.getCredits());
+        assertEquals(2, student1.getCoursesWithScores().size());
+        assertTrue(student1.getCoursesWithScores().containsAll(List.of("c001: 40", "c002: 60")));
+    }
+
+    @Test
+    void testSubmitBidsIsAllOrNothing() {
+        assertTrue(student1.enrollCourse("c001", 30));
+        boolean[] results = courseManager.submitBids(student1, List.of(
+                BidOperation.modify("c001", 10),
+                BidOperation.enroll("c002", 95),
+                BidOperation.enroll("c404", 1)));
+        assertArrayEquals(new boolean[]{true, false, false}, results);
+        // Nothing was applied.
+        assertEquals(70, student1.getCredits());
+        assertEquals(List.of("c001: 30"), student1.getCoursesWithScores());
+        assertFalse(course2.getEnrollStudent().contains(student1));
+    }
+
+    @Test
+    void testJournalRecoversSnapshotAndLaterBids() throws Exception {
+        var directory = Files.createTempDirectory("journal");
+        var manager = EnrollmentJournal.recover(directory);
+        manager.addCourse(new Course("c001", "Course One", 1));
+        manager.addCourse(new Course("c002", "Course Two", 1));
+        var alice = new Student("s001", "a@example.com", "Alice", 100);
+        var bob = new Student("s002", "b@example.com", "Bob", 100);
+        manager.addStudent(alice);
+        manager.addStudent(bob);
+        assertTrue(alice.enrollCourse("c001", 40));
+        assertTrue(bob.enrollCourse("c001", 30));
+        manager.checkpoint();
+
+        assertTrue(alice.modifyEnrollCredit("c001", 20));
+        assertTrue(bob.dropEnrollCourse("c001"));
+        assertTrue(bob.enrollCourse("c002", 70));
+        manager.getJournal().close();
+
+        var recovered = EnrollmentJournal.recover(directory);
+        var alice2 = recovered.getStudent("s001");
+        var bob2 = recovered.getStudent("s002");
+        assertEquals(80, alice2.getCredits());
+        assertEquals(30, bob2.getCredits());
+        assertEquals(List.of("c001: 20"), alice2.getCoursesWithScores());
+        assertEquals(List.of("c002: 70"), bob2.getCoursesWithScores());
+
+        recovered.finalizeEnrollments();
+        recovered.getJournal().close();
+        var finalized = EnrollmentJournal.recover(directory);
+        assertFalse(finalized.getIfOpen());
+        assertEquals(List.of("s002"), ids(finalized.getCourse("c002").getSuccessStudents()));
+        finalized.getJournal().close();
+    }
+
+    @Test
+    void testAllocationFreeEnrolledCreditsMatchStrings() throws Exception {
+        assertTrue(student1.enrollCourse("c001", 30));
+        assertTrue(student1.enrollCourse("c002", 45));
+
+        var out = new StringBuilder();
+        assertTrue(courseManager.appendEnrolledCoursesWithCredits(student1, out));
+        assertEquals(String.join("\n", student1.getCoursesWithScores()) + "\n", out.toString());
+
+        var courses = new Course[1];
+        var credits = new int[1];
+        assertEquals(2, courseManager.getEnrolledCredits(student1, courses, credits));
+        assertSame(course1, courses[0]);
+        assertEquals(30, credits[0]);
+
+        courseManager.setIfOpen(false);
+        assertEquals(-1, courseManager.getEnrolledCredits(student1, courses, credits));
+    }
+
+    @Test
+    void testLiveCutoffFollowsBids() {
+        assertTrue(student1.enrollCourse("c001", 50));
+        assertTrue(student2.enrollCourse("c001", 70));
+        assertEquals(0, courseManager.getCutoffBid("c001"));
+        assertFalse(courseManager.isCutoffTied("c001"));
+
+        assertTrue(student3.enrollCourse("c001", 50));
+        assertEquals(50, courseManager.getCutoffBid("c001"));
+        assertTrue(courseManager.isCutoffTied("c001"));
+
+        assertTrue(student1.modifyEnrollCredit("c001", 60));
+        assertEquals(50, courseManager.getCutoffBid("c001"));
+        assertFalse(courseManager.isCutoffTied("c001"));
+
+        assertTrue(student2.dropEnrollCourse("c001"));
+        assertEquals(0, courseManager.getCutoffBid("c001"));
+    }
+
+    @Test
+    void testSnapshotIsImmutableAndSharesUnchangedCourses() {
+        assertTrue(student1.enrollCourse("c001", 40));
+        var first = courseManager.snapshot();
+
+        assertTrue(student2.enrollCourse("c002", 30));
+        assertTrue(student1.modifyEnrollCredit("c001", 45));
+        var second = courseManager.snapshot();
+        var third = courseManager.snapshot();
+
+        assertEquals(40, first.getCourse("c001").getBid(0));
+        assertEquals(0, first.getCourse("c002").getBidCount());
+        assertEquals(60, first.getCredits("s001"));
+        assertEquals(45, second.getCourse("c001").getBid(0));
+        assertEquals(List.of("s002"), second.getCourse("c002").getStudentIds());
+        assertEquals(90, second.getCredits("s002"));
+        assertSame(second.getCourse("c001"), third.getCourse("c001"));
+
+        courseManager.finalizeEnrollments();
+        var finalized = courseManager.snapshot();
+        assertFalse(finalized.getIfOpen());
+        assertEquals(List.of("s001"), finalized.getCourse("c001").getSuccessStudentIds());
+    }
+
+    @Test
+    void testMetricsCountOutcomesAndRejections() {
+        var metrics = new StripedEnrollmentMetrics();
+        courseManager.setMetrics(metrics);
+
+        assertTrue(student1.enrollCourse("c001", 40));
+        assertFalse(student1.enrollCourse("c001", 10));
+        assertFalse(student1.enrollCourse("c999", 10));
+        assertFalse(student2.enrollCourse("c001", 0));
+        assertFalse(student2.enrollCourse("c001", 1000));
+        assertTrue(student1.modifyEnrollCredit("c001", 50));
+        assertFalse(student2.dropEnrollCourse("c001"));
+        courseManager.finalizeEnrollments();
+        assertFalse(student1.dropEnrollCourse("c001"));
+
+        var enroll = EnrollmentMetrics.Operation.ENROLL;
+        var drop = EnrollmentMetrics.Operation.DROP;
+        assertEquals(1, metrics.getEnrollCount());
+        assertEquals(1, metrics.getModifyCount());
+        assertEquals(1, metrics.getRejectionCount(enroll, RejectReason.ALREADY_ENROLLED));
+        assertEquals(1, metrics.getRejectionCount(enroll, RejectReason.UNKNOWN_COURSE));
+        assertEquals(1, metrics.getRejectionCount(enroll, RejectReason.INVALID_CREDITS));
+        assertEquals(1, metrics.getRejectionCount(enroll, RejectReason.INSUFFICIENT_CREDITS));
+        assertEquals(1, metrics.getRejectionCount(drop, RejectReason.NOT_ENROLLED));
+        assertEquals(1, metrics.getRejectionCount(drop, RejectReason.CLOSED));
+        assertEquals(courseManager.getCourses().size(), metrics.getFinalizedCourseCount());
+    }
+
+    @Test
+    void testCompactEnrollCourseViews() {
+        assertTrue(student1.enrollCourse("c001", 10));
+        assertTrue(student1.enrollCourse("c002", 20));
+        assertTrue(student1.dropEnrollCourse("c001"));
+        assertEquals(List.of(course2), student1.getEnrollCourses());
+        assertTrue(student1.getEnrollCourses().contains(course2));
+        assertFalse(student1.getEnrollCourses().contains(course1));
+        assertThrows(UnsupportedOperationException.class, () -> student1.getEnrollCourses().add(course1));
+
+        courseManager.finalizeEnrollments();
+        assertEquals(List.of(course2), student1.getSuccessCourses());
+    }
+
+    @Test
+    void testFinalizeAgainOnlyRecomputesChangedCourses() {
+        assertTrue(student1.enrollCourse("c001", 30));
+        assertTrue(student2.enrollCourse("c001", 40));
+        assertTrue(student3.enrollCourse("c001", 50));
+        assertTrue(student1.enrollCourse("c002", 10));
+        courseManager.finalizeEnrollments();
+        assertEquals(List.of(student3, student2), course1.getSuccessStudents());
+
+        var metrics = new StripedEnrollmentMetrics();
+        courseManager.setMetrics(metrics);
+        courseManager.finalizeEnrollments();
+        assertEquals(0, metrics.getFinalizedCourseCount());
+        assertEquals(List.of(student3, student2), course1.getSuccessStudents());
+        assertEquals(List.of(course1), student2.getSuccessCourses());
+
+        assertTrue(courseManager.setMaxCapacity("c001", 1));
+        courseManager.finalizeEnrollments();
+        assertEquals(1, metrics.getFinalizedCourseCount());
+        assertEquals(List.of(student3), course1.getSuccessStudents());
+        assertEquals(List.of(), student2.getSuccessCourses());
+        assertEquals(List.of(course2), student1.getSuccessCourses());
+    }
+
+    @Test
+    void testNextRoundRefundsLosersAndPromotesFromWaitlist() {
+        assertTrue(student1.enrollCourse("c001", 30));
+        assertTrue(student2.enrollCourse("c001", 40));
+        assertTrue(student3.enrollCourse("c001", 50));
+        courseManager.openNextRound();
+
+        assertEquals(2, courseManager.getRound());
+        assertTrue(courseManager.getIfOpen());
+        assertEquals(100, student1.getCredits());
+        assertEquals(80, student2.getCredits());
+        assertEquals(List.of(course1), student2.getSuccessCourses());
+        // student3 already holds a seat.
+        assertFalse(student3.enrollCourse("c001", 10));
+
+        assertTrue(student2.dropEnrollCourse("c001"));
+        assertEquals(120, student2.getCredits());
+        assertEquals(70, student1.getCredits());
+        assertEquals(List.of(course1), student1.getSuccessCourses());
+        assertTrue(course1.getSuccessStudents().containsAll(List.of(student1, student3)));
+
+        assertTrue(student2.enrollCourse("c002", 20));
+        courseManager.finalizeEnrollments();
+        assertEquals(2, course1.getSuccessStudents().size());
+        assertEquals(List.of(student2), course2.getSuccessStudents());
+        assertEquals(List.of(course1), student3.getSuccessCourses());
+    }
+
+    @Test
+    void testEventBusPublishesChangesInOrder() {
+        var bus = new EnrollmentEventBus(16);
+        courseManager.setEventBus(bus);
+        var subscription = bus.subscribe();
+
+        assertTrue(student1.enrollCourse("c001", 30));
+        assertTrue(student2.enrollCourse("c001", 40));
+        assertTrue(student3.enrollCourse("c001", 50));
+        assertTrue(student1.modifyEnrollCredit("c001", 35));
+        assertTrue(student2.dropEnrollCourse("c001"));
+        assertFalse(student2.dropEnrollCourse("c001"));
+        courseManager.finalizeEnrollments();
+
+        var seen = new ArrayList<String>();
+        assertEquals(7, subscription.poll(event -> seen.add(event.getType() + " "
+                + event.getStudentId() + " " + event.getCredits())));
+        assertEquals(List.of("ENROLL s001 30", "ENROLL s002 40", "ENROLL s003 50", "MODIFY s001 35",
+                "DROP s002 40", "ADMIT s003 50", "ADMIT s001 35"), seen);
+        assertEquals(6, subscription.getSequence());
+        assertEquals(0, subscription.poll(event -> fail("No more events")));
+        subscription.close();
+    }
+
+    @Test
+    void testShardedManagerMatchesSingleManager() {
+        var single = randomTerm(11);
+        var sharded = randomTerm(new ShardedCourseManager(4), 11);
+        single.finalizeEnrollments();
+        sharded.finalizeEnrollments();
+
+        assertEquals(300, sharded.getCourses().size());
+        for (var course : single.getCourses()) {
+            assertEquals(ids(course.getSuccessStudents()),
+                    ids(sharded.getCourse(course.getCourseID()).getSuccessStudents()));
+        }
+        for (var student : single.getStudents()) {
+            var other = sharded.getStudent(student.getStudentID());
+            assertEquals(student.getCredits(), other.getCredits());
+            var expected = new ArrayList<String>();
+            student.getSuccessCourses().forEach(course -> expected.add(course.getCourseID()));
+            var actual = new ArrayList<String>();
+            other.getSuccessCourses().forEach(course -> actual.add(course.getCourseID()));
+            assertEquals(new HashSet<>(expected), new HashSet<>(actual));
+        }
+    }
+
+    @Test
+    void testShardedManagerNeverOverspendsAcrossShards() throws Exception {
+        var manager = new ShardedCourseManager(4);
+        for (int i = 0; i < 40; i++) {
+            manager.addCourse(new Course("sc" + i, "Course " + i, 5));
+        }
+        var student = new Student("ss", "ss@example.com", "Sharded", 100);
+        manager.addStudent(student);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        var futures = new ArrayList<Future<Integer>>();
+        for (int t = 0; t < 4; t++) {
+            int first = t * 10;
+            futures.add(executor.submit(() -> {
+                int spent = 0;
+                for (int i = first; i < first + 10; i++) {
+                    if (student.enrollCourse("sc" + i, 7)) {
+                        spent += 7;
+                    }
+                }
+                return spent;
+            }));
+        }
+        int spent = 0;
+        for (var future : futures) {
+            spent += future.get();
+        }
+        executor.shutdown();
+
+        assertEquals(98, spent);
+        assertEquals(2, student.getCredits());
+        assertEquals(14, student.getEnrollCourses().size());
+        assertEquals(14, manager.getEnrolledCoursesWithCredits(student).size());
+    }
+
+    @Test
+    void testAsyncIntakeAppliesQueuedBids() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        courseManager.setIntakeExecutor(executor);
+        var audit = new CreditAudit(courseManager, 1, true);
+        courseManager.setCreditAudit(audit);
+        var futures = new ArrayList<CompletableFuture<Boolean>>();
+        var students = new ArrayList<Student>();
+        for (int i = 0; i < 500; i++) {
+            var student = new Student("as" + i, "as" + i + "@example.com", "Async " + i, 50);
+            courseManager.addStudent(student);
+            students.add(student);
+            futures.add(courseManager.enrollStudentInCourseAsync(student, "c001", 1 + i % 50));
+            futures.add(courseManager.enrollStudentInCourseAsync(student, "c002", 51));
+        }
+        futures.add(courseManager.enrollStudentInCourseAsync(student1, "c999", 10));
+        int succeeded = 0;
+        for (var future : futures) {
+            if (future.get()) {
+                succeeded++;
+            }
+        }
+        assertEquals(500, succeeded);
+        assertEquals(500, course1.getEnrollStudent().size());
+        assertEquals(0, course2.getEnrollStudent().size());
+
+        assertTrue(courseManager.modifyStudentEnrollmentCreditsAsync(students.get(0), "c001", 50).get());
+        assertTrue(courseManager.dropStudentEnrollmentCourseAsync(students.get(1), "c001").get());
+        assertFalse(courseManager.dropStudentEnrollmentCourseAsync(students.get(1), "c001").get());
+        assertEquals(0, students.get(0).getCredits());
+        assertEquals(50, students.get(1).getCredits());
+        // Every successful request was sampled, as if it had been synchronous.
+        assertEquals(502L, audit.getCheckCount() + audit.getSkippedCount());
+        assertEquals(0L, audit.getViolationCount());
+        executor.shutdown();
+    }
+
+    @Test
+    void testResultsIndexMatchesFinalizedState() {
+        for (var manager : List.of(randomTerm(13), randomTerm(new ShardedCourseManager(3), 13))) {
+            assertNull(manager.getResults());
+            manager.setResultCacheSize(16);
+            manager.finalizeEnrollments();
+            var results = manager.getResults();
+            assertResultsMatch(manager, results);
+            assertSame(results, manager.getResults());
+
+            // The next finalization re-reads only the changed courses.
+            var random = new Random(13);
+            manager.setIfOpen(true);
+            for (int i = 0; i < 200; i++) {
+                var student = manager.getStudent("rs" + random.nextInt(1000));
+                if (!student.dropEnrollCourse("rc" + random.nextInt(300))) {
+                    student.enrollCourse("rc" + random.nextInt(300), 1 + random.nextInt(20));
+                }
+            }
+            manager.finalizeEnrollments();
+            assertResultsMatch(manager, manager.getResults());
+            manager.openNextRound();
+            manager.finalizeEnrollments();
+            assertResultsMatch(manager, manager.getResults());
+
+            // Many small finalizations stack and merge index layers.
+            for (int i = 0; i < 40; i++) {
+                manager.setIfOpen(true);
+                var student = manager.getStudent("rs" + random.nextInt(1000));
+                if (!student.dropEnrollCourse("rc" + random.nextInt(300))) {
+                    student.enrollCourse("rc" + random.nextInt(300), 1 + random.nextInt(20));
+                }
+                manager.finalizeEnrollments();
+                assertResultsMatch(manager, manager.getResults());
+            }
+            // Nothing cleared, nothing rebuilt.
+            results = manager.getResults();
+            manager.finalizeEnrollments();
+            assertSame(results, manager.getResults());
+        }
+    }
+
+    private static void assertResultsMatch(CourseManager manager, EnrollmentResults results) {
+        for (var course : manager.getCourses()) {
+            assertEquals(ids(course.getSuccessStudents()), results.getAdmittedStudentIds(course.getCourseID()));
+            assertEquals(manager.getCutoffBid(course.getCourseID()), results.getClearingBid(course.getCourseID()));
+        }
+        for (var student : manager.getStudents()) {
+            var expected = new ArrayList<String>();
+            student.getSuccessCourses().forEach(course -> expected.add(course.getCourseID()));
+            assertEquals(expected, results.getSchedule(student.getStudentID()));
+            for (var courseId : expected) {
+                assertTrue(results.isAdmitted(student.getStudentID(), courseId));
+            }
+            assertSame(results.renderSchedule(student.getStudentID()),
+                    results.renderSchedule(student.getStudentID()));
+        }
+    }
+
+    @Test
+    void testTraceReplaysToSameStateAfterRoundTrip() throws Exception {
+        var generated = BidTrace.generate(new SyntheticTerm(60, 10, 1.2, 5), 8, 0.3, 5);
+        var file = Files.createTempFile("trace", ".bin");
+        try {
+            generated.write(file);
+            var trace = BidTrace.read(file);
+            assertEquals(generated.size(), trace.size());
+            var reference = BidReplay.replay(generated, 1, null);
+            assertEquals(List.of(), BidReplay.compare(reference.manager, BidReplay.replay(trace, 3, null).manager));
+
+            // Recording the reference operations live gives a trace that replays to the same state.
+            var live = new CourseManager();
+            var students = trace.register(live);
+            live.setEventBus(new EnrollmentEventBus(64));
+            BidTrace recorded;
+            try (var recorder = BidTrace.record(live)) {
+                for (int i = 0; i < trace.size(); i++) {
+                    trace.apply(i, live, students);
+                    recorder.drain();
+                }
+                recorded = recorder.finish();
+            }
+            live.finalizeEnrollments();
+            assertEquals(reference.accepted, recorded.size());
+            assertEquals(List.of(), BidReplay.compare(live, BidReplay.replay(recorded, 2, null).manager));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testLargeEnrollSetKeepsOrderAndIdentity() {
+        var manager = new CourseManager();
+        var courses = new ArrayList<Course>();
+        for (int i = 0; i < 40; i++) {
+            var course = new Course("m" + i, "Course " + i, 5);
+            manager.addCourse(course);
+            courses.add(course);
+        }
+        var student = new Student("ms", "ms@example.com", "Many", 400);
+        manager.addStudent(student);
+        for (int i = 39; i >= 0; i--) {
+            assertTrue(student.enrollCourse("m" + i, 1));
+        }
+        for (int i = 0; i < 40; i += 3) {
+            assertTrue(student.dropEnrollCourse("m" + i));
+        }
+
+        var expected = new ArrayList<Course>();
+        for (int i = 39; i >= 0; i--) {
+            if (i % 3 != 0) {
+                expected.add(courses.get(i));
+            }
+        }
+        var enrolled = student.getEnrollCourses();
+        assertEquals(expected, enrolled);
+        for (int i = 0; i < 40; i++) {
+            assertEquals(i % 3 != 0, enrolled.contains(courses.get(i)));
+        }
+        assertEquals(expected.indexOf(courses.get(20)), enrolled.indexOf(courses.get(20)));
+
+        // Equal IDs mean equal entities, so copies from another term key the same entries.
+        var copy = new Course("m1", "Course 1 copy", 9);
+        assertEquals(courses.get(1), copy);
+        assertTrue(enrolled.contains(copy));
+        assertTrue(new HashSet<>(List.of(student)).contains(new Student("ms", "", "", 0)));
+    }
+
+    @Test
+    void testClearingStrategiesDecideTiesAtCutoff() {
+        var manager = new CourseManager();
+        manager.addCourse(new Course("tc", "Ties", 3));
+        var names = List.of("ta", "tb", "tc", "td", "te");
+        var bids = List.of(50, 40, 40, 40, 10);
+        for (int i = 0; i < names.size(); i++) {
+            var student = new Student(names.get(i), names.get(i) + "@example.com", names.get(i), 100);
+            manager.addStudent(student);
+            assertTrue(student.enrollCourse("tc", bids.get(i)));
+        }
+        var course = manager.getCourse("tc");
+
+        manager.finalizeEnrollments();
+        assertEquals(List.of("ta"), ids(course.getSuccessStudents()));
+
+        manager.setClearingStrategy(ClearingStrategy.ADMIT_ALL_TIES);
+        manager.finalizeEnrollments();
+        assertEquals(Set.of("ta", "tb", "tc", "td"), new HashSet<>(ids(course.getSuccessStudents())));
+
+        manager.setClearingStrategy(ClearingStrategy.seniority(
+                student -> student.getStudentID().equals("tb") ? 1 : student.getStudentID().equals("td") ? 3 : 2, 1));
+        manager.finalizeEnrollments();
+        assertEquals(List.of("ta", "td", "tc"), ids(course.getSuccessStudents()));
+
+        manager.setClearingStrategy(ClearingStrategy.lottery(7));
+        manager.finalizeEnrollments();
+        var drawn = new HashSet<>(ids(course.getSuccessStudents()));
+        assertEquals(3, drawn.size());
+        assertTrue(drawn.contains("ta"));
+        // Dropping and re-placing a tied bid changes its slot but not the draw.
+        manager.setIfOpen(true);
+        assertTrue(manager.getStudent("tb").dropEnrollCourse("tc"));
+        assertTrue(manager.getStudent("tb").enrollCourse("tc", 40));
+        manager.finalizeEnrollments();
+        assertEquals(drawn, new HashSet<>(ids(course.getSuccessStudents())));
+    }
+
+    @Test
+    void testTermArchiveAnswersLikeFinalizedManager() throws Exception {
+        var manager = randomTerm(17);
+        manager.finalizeEnrollments();
+        var file = Files.createTempFile("term", ".archive");
+        try {
+            TermArchive.write(manager.snapshot(), file);
+            try (var archive = TermArchive.open(file)) {
+                assertFalse(archive.getIfOpen());
+                assertEquals(manager.getCourses().size(), archive.getCourseCount());
+                for (var course : manager.getCourses()) {
+                    int c = archive.findCourse(course.getCourseID());
+                    assertEquals(course.getCourseID(), archive.getCourseId(c));
+                    assertEquals(course.getCourseName(), archive.getCourseName(c));
+                    assertEquals(ids(course.getSuccessStudents()), archive.getSuccessStudentIds(course.getCourseID()));
+                    assertEquals(course.getEnrollStudent().size(), archive.getBidCount(c));
+                    for (int i = 0; i < archive.getBidCount(c); i++) {
+                        var student = manager.getStudent(archive.getStudentId(archive.getBidStudent(c, i)));
+                        int bid = course.getCredits().get(course.getEnrollStudent().indexOf(student));
+                        assertEquals(bid, archive.getBid(c, i));
+                    }
+                }
+                for (var student : manager.getStudents()) {
+                    int s = archive.findStudent(student.getStudentID());
+                    assertEquals(student.getCredits(), archive.getCredits(s));
+                    var expected = new ArrayList<String>();
+                    student.getSuccessCourses().forEach(course -> expected.add(course.getCourseID()));
+                    assertEquals(expected, archive.getSuccessCourseIds(student.getStudentID()));
+                    assertEquals(student.getEnrollCourses().size(), archive.getStudentBidCount(s));
+                }
+                assertEquals(-1, archive.findCourse("no such course"));
+                assertEquals(List.of(), archive.getSuccessCourseIds("no such student"));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testCreditAuditBalancesCommittedCredits() {
+        var manager = new CourseManager();
+        var audit = new CreditAudit(manager, 1, true);
+        manager.setCreditAudit(audit);
+        manager.addCourse(new Course("a1", "Audit 1", 1));
+        manager.addCourse(new Course("a2", "Audit 2", 2));
+        var x = new Student("x", "x@example.com", "x", 100);
+        var y = new Student("y", "y@example.com", "y", 100);
+        var z = new Student("z", "z@example.com", "z", 100);
+        manager.addStudent(x);
+        manager.addStudent(y);
+        manager.addStudent(z);
+
+        assertTrue(x.enrollCourse("a1", 60));
+        assertTrue(y.enrollCourse("a1", 50));
+        assertTrue(z.enrollCourse("a2", 30));
+        var results = manager.submitBids(x, List.of(BidOperation.enroll("a2", 20), BidOperation.modify("a1", 70)));
+        assertArrayEquals(new boolean[]{true, true}, results);
+        assertEquals(10, x.getCredits());
+        assertEquals(90, x.getCommittedCredits());
+
+        // Seats stay committed, waitlisted bids are given back.
+        manager.finalizeEnrollments();
+        manager.openNextRound();
+        assertEquals(90, x.getCommittedCredits());
+        assertEquals(0, y.getCommittedCredits());
+        assertEquals(100, y.getCredits());
+
+        // Dropping the seat promotes y, who pays their bid again.
+        assertTrue(x.dropEnrollCourse("a1"));
+        assertEquals(20, x.getCommittedCredits());
+        assertEquals(80, x.getCredits());
+        assertEquals(50, y.getCommittedCredits());
+        assertEquals(50, y.getCredits());
+        assertNull(audit.check(y));
+        assertEquals(0L, audit.getViolationCount());
+        assertTrue(audit.getCheckCount() >= 6);
+
+        // Credits moved behind the manager's back are caught by the next check.
+        y.refund(5);
+        assertThrows(IllegalStateException.class, () -> y.enrollCourse("a2", 10));
+        assertEquals(1L, audit.getViolationCount());
+        assertNotNull(audit.getLastViolation());
+    }
+
+    @Test
+    void testEqualBidsAdmittedInBiddingOrderAfterDrop() {
+        var manager = new CourseManager();
+        manager.addCourse(new Course("oc", "Order", 3));
+        for (var name : List.of("a", "b", "c", "d")) {
+            manager.addStudent(new Student(name, name + "@example.com", name, 100));
+            assertTrue(manager.getStudent(name).enrollCourse("oc", name.equals("a") ? 10 : 20));
+        }
+        assertTrue(manager.getStudent("a").dropEnrollCourse("oc"));
+        manager.finalizeEnrollments();
+        assertEquals(List.of("b", "c", "d"), ids(manager.getCourse("oc").getSuccessStudents()));
+    }
+
+    @Test
+    void testTiedWaitlistPromotionSurvivesRecovery() throws Exception {
+        var directory = Files.createTempDirectory("journal");
+        var manager = EnrollmentJournal.recover(directory);
+        manager.addCourse(new Course("pc", "Promote", 1));
+        for (int i = 0; i < 6; i++) {
+            var student = new Student("s" + i, "s" + i + "@example.com", "S" + i, 100);
+            manager.addStudent(student);
+            assertTrue(student.enrollCourse("pc", i == 0 ? 50 : 10));
+        }
+        manager.finalizeEnrollments();
+        manager.checkpoint();
+        manager.openNextRound();
+        assertTrue(manager.getStudent("s0").dropEnrollCourse("pc"));
+        // The earliest of the tied bids gets the seat.
+        assertEquals(List.of("s1"), ids(manager.getCourse("pc").getSuccessStudents()));
+        manager.getJournal().close();
+
+        var recovered = EnrollmentJournal.recover(directory);
+        assertEquals(List.of("s1"), ids(recovered.getCourse("pc").getSuccessStudents()));
+        for (var student : recovered.getStudents()) {
+            assertEquals(manager.getStudent(student.getStudentID()).getCredits(), student.getCredits());
+        }
+        recovered.getJournal().close();
+    }
+
+    @Test
+    void testBidSheetDropsSeatLikeSingleDrop() {
+        var manager = new CourseManager();
+        manager.addCourse(new Course("sa", "Seat A", 1));
+        manager.addCourse(new Course("sb", "Seat B", 1));
+        var holder = new Student("h", "h@example.com", "h", 100);
+        var waiting = new Student("w", "w@example.com", "w", 100);
+        manager.addStudent(holder);
+        manager.addStudent(waiting);
+        assertTrue(holder.enrollCourse("sa", 60));
+        assertTrue(waiting.enrollCourse("sa", 30));
+        manager.finalizeEnrollments();
+        manager.openNextRound();
+        assertEquals(40, holder.getCredits());
+
+        // The refunded seat pays for a bid larger than the credits left.
+        var results = manager.submitBids(holder, List.of(BidOperation.drop("sa"), BidOperation.enroll("sb", 90)));
+        assertArrayEquals(new boolean[]{true, true}, results);
+        assertEquals(10, holder.getCredits());
+        assertEquals(List.of("w"), ids(manager.getCourse("sa").getSuccessStudents()));
+        assertEquals(70, waiting.getCredits());
+        assertEquals(List.of("sb: 90"), holder.getCoursesWithScores());
+        assertArrayEquals(new boolean[]{false}, manager.submitBids(holder, List.of(BidOperation.drop("sa"))));
+    }
+
+    @Test
+    void testSnapshotSeesCapacityChange() {
+        var manager = new CourseManager();
+        manager.addCourse(new Course("cap", "Capacity", 2));
+        for (int i = 1; i <= 3; i++) {
+            var student = new Student("k" + i, "k" + i + "@example.com", "K" + i, 100);
+            manager.addStudent(student);
+            assertTrue(student.enrollCourse("cap", 10 * i));
+        }
+        assertEquals(10, manager.snapshot().getCourse("cap").getCutoffBid());
+
+        assertTrue(manager.setMaxCapacity("cap", 1));
+        var snapshot = manager.snapshot().getCourse("cap");
+        assertEquals(1, snapshot.getMaxCapacity());
+        assertEquals(20, snapshot.getCutoffBid());
+        assertEquals(manager.getCutoffBid("cap"), snapshot.getCutoffBid());
+    }
+
+    @Test
+    void testJournalWritesAcceptedBidsWithoutFlush() throws Exception {
+        var directory = Files.createTempDirectory("journal");
+        var manager = EnrollmentJournal.recover(directory);
+        manager.addCourse(new Course("dc", "Durable", 1));
+        var student = new Student("d1", "d1@example.com", "D1", 100);
+        manager.addStudent(student);
+        manager.getJournal().setDurability(EnrollmentJournal.Durability.SYNC);
+        assertTrue(student.enrollCourse("dc", 40));
+        // What a crash right now would leave on disk.
+        assertEquals(List.of("dc: 40"), crashCopy(directory).getStudent("d1").getCoursesWithScores());
+
+        manager.getJournal().setDurability(EnrollmentJournal.Durability.GROUP);
+        manager.getJournal().setGroupCommit(1000, 5);
+        assertTrue(student.modifyEnrollCredit("dc", 45));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!crashCopy(directory).getStudent("d1").getCoursesWithScores().equals(List.of("dc: 45"))) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+        manager.getJournal().close();
+    }
+
+    @Test
+    void testJournalRefusesChangesItCannotLog() throws Exception {
+        var directory = Files.createTempDirectory("journal");
+        var manager = EnrollmentJournal.recover(directory);
+        manager.addCourse(new Course("jc", "Journaled", 2));
+        var student = new Student("j1", "j1@example.com", "J1", 100);
+        manager.addStudent(student);
+
+        // A record too large to encode fails before the student is registered.
+        var unlogged = new Student("j2", "x".repeat(70000), "J2", 100);
+        assertThrows(IllegalArgumentException.class, () -> manager.addStudent(unlogged));
+        assertNull(manager.getStudent("j2"));
+
+        // So does a change after the journal was closed.
+        assertTrue(student.enrollCourse("jc", 40));
+        manager.getJournal().close();
+        assertThrows(IllegalStateException.class, () -> student.modifyEnrollCredit("jc", 30));
+        assertEquals(List.of("jc: 40"), student.getCoursesWithScores());
+        assertEquals(60, student.getCredits());
+        assertEquals(List.of("jc: 40"), crashCopy(directory).getStudent("j1").getCoursesWithScores());
+    }
+
+    @Test
+    void testRecoveryClearsWithJournaledStrategy() throws Exception {
+        var directory = Files.createTempDirectory("journal");
+        var manager = EnrollmentJournal.recover(directory);
+        manager.addCourse(new Course("st", "Strategy", 1));
+        for (var id : List.of("p", "q")) {
+            var student = new Student(id, id + "@example.com", id, 100);
+            manager.addStudent(student);
+            assertTrue(student.enrollCourse("st", 90));
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> manager.setClearingStrategy(ClearingStrategy.seniority(student -> 0, 1)));
+        manager.setClearingStrategy(ClearingStrategy.ADMIT_ALL_TIES);
+        manager.finalizeEnrollments();
+        assertEquals(List.of("p", "q"), ids(manager.getCourse("st").getSuccessStudents()));
+        manager.getJournal().close();
+
+        var recovered = EnrollmentJournal.recover(directory);
+        assertSame(ClearingStrategy.ADMIT_ALL_TIES, recovered.getClearingStrategy());
+        assertEquals(List.of("p", "q"), ids(recovered.getCourse("st").getSuccessStudents()));
+        assertEquals(10, recovered.getStudent("p").getCredits());
+        assertEquals(10, recovered.getStudent("q").getCredits());
+
+        // A snapshot keeps the strategy too.
+        recovered.setClearingStrategy(ClearingStrategy.lottery(3));
+        recovered.checkpoint();
+        recovered.finalizeEnrollments();
+        recovered.getJournal().close();
+        var restored = EnrollmentJournal.recover(directory);
+        assertEquals(ids(recovered.getCourse("st").getSuccessStudents()),
+                ids(restored.getCourse("st").getSuccessStudents()));
+        restored.getJournal().close();
+    }
+
+    @Test
+    void testSeatsAndWaitlistSurviveSnapshotAndArchive() throws Exception {
+        var directory = Files.createTempDirectory("journal");
+        var manager = EnrollmentJournal.recover(directory);
+        manager.addCourse(new Course("mr", "Rounds", 2));
+        int credits = 50;
+        for (var name : List.of("a", "b", "c", "d")) {
+            manager.addStudent(new Student(name, name + "@example.com", name, 100));
+            assertTrue(manager.getStudent(name).enrollCourse("mr", credits));
+            credits -= 10;
+        }
+        manager.finalizeEnrollments();
+        manager.openNextRound();
+        // a gives up the seat won in round 1; c, first on the waitlist, takes it in round 2.
+        assertTrue(manager.getStudent("a").dropEnrollCourse("mr"));
+        manager.finalizeEnrollments();
+        manager.checkpoint();
+        manager.getJournal().close();
+
+        var course = manager.snapshot().getCourse("mr");
+        assertEquals(0, course.getBidCount());
+        assertEquals(List.of("b", "c"), course.getSuccessStudentIds());
+        assertEquals(List.of("b", "c"), course.getSeatStudentIds());
+        assertEquals(40, course.getSeatBid(0));
+        assertEquals(1, course.getSeatRound(0));
+        assertEquals(30, course.getSeatBid(1));
+        assertEquals(2, course.getSeatRound(1));
+        assertEquals(List.of("d"), course.getWaitlistStudentIds());
+        assertEquals(20, course.getWaitlistBid(0));
+
+        var recoveredManager = EnrollmentJournal.recover(directory);
+        var recovered = recoveredManager.snapshot().getCourse("mr");
+        assertEquals(course.getSeatStudentIds(), recovered.getSeatStudentIds());
+        assertEquals(2, recovered.getSeatRound(1));
+        assertEquals(course.getWaitlistStudentIds(), recovered.getWaitlistStudentIds());
+        recoveredManager.getJournal().close();
+
+        var file = Files.createTempFile("term", ".archive");
+        try {
+            TermArchive.write(manager.snapshot(), file);
+            try (var archive = TermArchive.open(file)) {
+                int c = archive.findCourse("mr");
+                assertEquals(2, archive.getSeatCount(c));
+                for (int i = 0; i < 2; i++) {
+                    assertEquals(course.getSeatStudentIds().get(i), archive.getStudentId(archive.getSeatStudent(c, i)));
+                    assertEquals(course.getSeatBid(i), archive.getSeatBid(c, i));
+                    assertEquals(course.getSeatRound(i), archive.getSeatRound(c, i));
+                }
+                assertEquals(1, archive.getWaitlistCount(c));
+                assertEquals("d", archive.getStudentId(archive.getWaitlistStudent(c, 0)));
+                assertEquals(20, archive.getWaitlistBid(c, 0));
+                assertEquals("Rounds", archive.getCourseName(c));
+
+                int student = archive.findStudent("c");
+                assertEquals(List.of("mr"), archive.getSuccessCourseIds("c"));
+                assertEquals(1, archive.getStudentSeatCount(student));
+                assertEquals(c, archive.getStudentSeatCourse(student, 0));
+                assertEquals(30, archive.getStudentSeatBid(student, 0));
+                assertEquals(2, archive.getStudentSeatRound(student, 0));
+                assertEquals(70, archive.getCredits(student));
+                student = archive.findStudent("d");
+                assertEquals(1, archive.getStudentWaitlistCount(student));
+                assertEquals(c, archive.getStudentWaitlistCourse(student, 0));
+                assertEquals(20, archive.getStudentWaitlistBid(student, 0));
+                assertEquals(0, archive.getStudentSeatCount(archive.findStudent("a")));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testSnapshotIsConsistentCutOfCreditsAndBids() throws Exception {
+        for (var manager : List.of(new CourseManager(4), new ShardedCourseManager(3, 2))) {
+            for (int c = 0; c < 6; c++) {
+                manager.addCourse(new Course("cc" + c, "Cut " + c, 10));
+            }
+            for (int i = 0; i < 8; i++) {
+                manager.addStudent(new Student("cs" + i, "cs" + i + "@example.com", "CS" + i, 100));
+            }
+            var stop = new AtomicReference<Boolean>(false);
+            var executor = Executors.newFixedThreadPool(4);
+            var workers = new ArrayList<Future<?>>();
+            for (int t = 0; t < 4; t++) {
+                int seed = t;
+                workers.add(executor.submit(() -> {
+                    var random = new Random(seed);
+                    while (!stop.get()) {
+                        var student = manager.getStudent("cs" + random.nextInt(8));
+                        var courseId = "cc" + random.nextInt(6);
+                        if (!student.dropEnrollCourse(courseId)) {
+                            student.enrollCourse(courseId, 1 + random.nextInt(30));
+                        }
+                    }
+                }));
+            }
+            try {
+                for (int n = 0; n < 300; n++) {
+                    var snapshot = manager.snapshot();
+                    var spent = new int[8];
+                    for (var course : snapshot.getCourses()) {
+                        for (int i = 0; i < course.getBidCount(); i++) {
+                            spent[Integer.parseInt(course.getStudentIds().get(i).substring(2))] += course.getBid(i);
+                        }
+                    }
+                    for (int i = 0; i < 8; i++) {
+                        assertEquals(100, snapshot.getCredits("cs" + i) + spent[i]);
+                    }
+                }
+            } finally {
+                stop.set(true);
+                for (var worker : workers) {
+                    worker.get(10, TimeUnit.SECONDS);
+                }
+                executor.shutdown();
+            }
+        }
+    }
+
+    private static JournaledCourseManager crashCopy(Path directory) throws Exception {
+        var copy = Files.createTempDirectory("crash");
+        Files.copy(directory.resolve("journal.bin"), copy.resolve("journal.bin"));
+        var manager = EnrollmentJournal.recover(copy);
+        manager.getJournal().close();
+        return manager;
+    }
+
+    @Test
+    void testShardedBidSheetIsAllOrNothingAcrossShards() {
+        var manager = new ShardedCourseManager(4);
+        var byShard = new String[4];
+        for (int i = 0; byShard[0] == null || byShard[3] == null; i++) {
+            var courseId = "xs" + i;
+            if (byShard[manager.shardOf(courseId)] == null) {
+                byShard[manager.shardOf(courseId)] = courseId;
+                manager.addCourse(new Course(courseId, "Course " + i, 2));
+            }
+        }
+        var student = new Student("xs", "xs@example.com", "Cross", 100);
+        manager.addStudent(student);
+        assertTrue(student.enrollCourse(byShard[3], 30));
+
+        // The first shard's part passes on its own; the last shard's part cannot.
+        var results = manager.submitBids(student, List.of(BidOperation.enroll(byShard[0], 40),
+                BidOperation.modify(byShard[3], 80)));
+        assertArrayEquals(new boolean[]{true, false}, results);
+        assertEquals(70, student.getCredits());
+        assertEquals(List.of(byShard[3] + ": 30"), student.getCoursesWithScores());
+        assertEquals(0, manager.getCourse(byShard[0]).getEnrollStudent().size());
+
+        results = manager.submitBids(student, List.of(BidOperation.enroll(byShard[0], 40),
+                BidOperation.modify(byShard[3], 60)));
+        assertArrayEquals(new boolean[]{true, true}, results);
+        assertEquals(0, student.getCredits());
+        assertEquals(Set.of(byShard[0], byShard[3]), new HashSet<>(List.of(
+                student.getEnrollCourses().get(0).getCourseID(), student.getEnrollCourses().get(1).getCourseID())));
+    }
+
+    @Test
+    void testStudentCopiesMatchLedgerEntries() {
+        assertTrue(student1.enrollCourse("c001", 10));
+        var copy = new Student(student1.getStudentID(), "", "", 0);
+        var enrolled = course1.getEnrollStudent();
+        assertEquals(student1, copy);
+        assertTrue(enrolled.contains(copy));
+        assertEquals(enrolled.indexOf(student1), enrolled.indexOf(copy));
+        assertTrue(course1.getBids().contains(copy));
+        assertFalse(enrolled.contains(new Student("nobody", "", "", 0)));
+
+        // Removal renumbers the index in place; check it against a plain list.
+        var random = new Random(5);
+        var list = new CourseIdList();
+        var expected = new ArrayList<Integer>();
+        for (int step = 0; step < 5000; step++) {
+            int id = random.nextInt(64);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove((Integer) id), list.remove(id));
+            } else if (!expected.contains(id)) {
+                expected.add(id);
+                list.add(id);
+            }
+            for (int i = 0; i < 64; i++) {
+                assertEquals(expected.indexOf(i), list.indexOf(i));
+            }
+        }
+    }
+
+    @Test
+    void testTermLoaderReadsCoursesStudentsAndBids() throws Exception {
+        var manager = new CourseManager();
+        TermLoader.load(new StringReader(String.join("\n",
+                "N,2,2",
+                "# courses",
+                "C,t1,Loaded 1,1",
+                "C,t2,Loaded 2,3",
+                "",
+                "S,ta,ta@example.com,Alice,100",
+                "S,tb,tb@example.com,Bob,50",
+                "B,ta,t1,30",
+                "B,ta,t2,20",
+                "B,tb,t1,40")), manager);
+
+        assertEquals(2, manager.getCourses().size());
+        assertEquals(2, manager.getStudents().size());
+        var t1 = manager.getCourse("t1");
+        assertEquals("Loaded 1", t1.getCourseName());
+        assertEquals(1, t1.getMaxCapacity());
+        var alice = manager.getStudent("ta");
+        var bob = manager.getStudent("tb");
+        assertEquals("ta@example.com", alice.getEmail());
+        assertEquals(50, alice.getCredits());
+        assertEquals(10, bob.getCredits());
+        assertEquals(List.of("t1: 30", "t2: 20"), manager.getEnrolledCoursesWithCredits(alice));
+        assertEquals(List.of(alice, bob), t1.getEnrollStudent());
+
+        manager.finalizeEnrollments();
+        assertEquals(List.of(bob), t1.getSuccessStudents());
+        assertEquals(List.of(alice), manager.getCourse("t2").getSuccessStudents());
+
+        // A journaled manager is checkpointed after loading, so the bids survive.
+        var directory = Files.createTempDirectory("journal");
+        var journaled = EnrollmentJournal.recover(directory);
+        TermLoader.load(new StringReader("C,t1,Loaded 1,1\nS,ta,ta@example.com,Alice,100\nB,ta,t1,30"), journaled);
+        journaled.getJournal().close();
+        var recovered = EnrollmentJournal.recover(directory);
+        assertEquals(List.of("t1: 30"), recovered.getStudent("ta").getCoursesWithScores());
+        recovered.getJournal().close();
+    }
+
+    @Test
+    void testTermLoaderReportsLineOfMalformedRecord() {
+        var manager = new CourseManager();
+        var e = assertThrows(IOException.class, () -> TermLoader.load(new StringReader(String.join("\n",
+                "C,t1,Loaded 1,1",
+                "# comment",
+                "S,ta,ta@example.com,Alice,many")), manager));
+        assertEquals("Line 3: Not a number: many", e.getMessage());
+        e = assertThrows(IOException.class, () -> TermLoader.load(new StringReader(
+                "C,t1,Loaded 1\nB,ta,t1,10"), manager));
+        assertEquals("Line 1: Expected 4 fields", e.getMessage());
+        e = assertThrows(IOException.class, () -> TermLoader.load(new StringReader(
+                "C,t2,Loaded 2,1\nB,nobody,t2,10"), manager));
+        assertEquals("Line 2: Bid on unknown student or course", e.getMessage());
+    }
+
+    @Test
+    void testCrossSeatDropsDoNotDeadlock() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int round = 0; round < 2000; round++) {
+                var manager = crossedSeats();
+                var a = manager.getStudent("a");
+                var b = manager.getStudent("b");
+                var start = new CountDownLatch(1);
+                Future<boolean[]> dropX = executor.submit(() -> {
+                    start.await();
+                    return manager.submitBids(a, List.of(BidOperation.drop("x")));
+                });
+                Future<boolean[]> dropY = executor.submit(() -> {
+                    start.await();
+                    return manager.submitBids(b, List.of(BidOperation.drop("y")));
+                });
+                start.countDown();
+                assertArrayEquals(new boolean[]{true}, dropX.get(10, TimeUnit.SECONDS));
+                assertArrayEquals(new boolean[]{true}, dropY.get(10, TimeUnit.SECONDS));
+                assertEquals(List.of("b"), ids(manager.getCourse("x").getSuccessStudents()));
+                assertEquals(List.of("a"), ids(manager.getCourse("y").getSuccessStudents()));
+                assertEquals(60, a.getCredits());
+                assertEquals(60, b.getCredits());
+            }
+
+            // Pin the interleaving: while the drop of x waits for b's monitor to
+            // promote b, it must not hold a's, which b's own drop would need next.
+            var manager = crossedSeats();
+            var a = manager.getStudent("a");
+            var b = manager.getStudent("b");
+            Future<boolean[]> dropX;
+            synchronized (b) {
+                var dropper = new AtomicReference<Thread>();
+                dropX = executor.submit(() -> {
+                    dropper.set(Thread.currentThread());
+                    return manager.submitBids(a, List.of(BidOperation.drop("x")));
+                });
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                while (dropper.get() == null || dropper.get().getState() != Thread.State.BLOCKED) {
+                    assertTrue(System.nanoTime() < deadline);
+                    Thread.onSpinWait();
+                }
+                Future<Boolean> lockA = executor.submit(() -> {
+                    synchronized (a) {
+                        return true;
+                    }
+                });
+                assertTrue(lockA.get(10, TimeUnit.SECONDS));
+            }
+            assertArrayEquals(new boolean[]{true}, dropX.get(10, TimeUnit.SECONDS));
+            assertEquals(List.of("b"), ids(manager.getCourse("x").getSuccessStudents()));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Student a holds the seat of x and waits for y; b holds y and waits for x.
+     */
+    private static CourseManager crossedSeats() {
+        var manager = new CourseManager();
+        manager.addCourse(new Course("x", "X", 1));
+        manager.addCourse(new Course("y", "Y", 1));
+        var a = new Student("a", "a@example.com", "a", 100);
+        var b = new Student("b", "b@example.com", "b", 100);
+        manager.addStudent(a);
+        manager.addStudent(b);
+        assertTrue(a.enrollCourse("x", 60));
+        assertTrue(b.enrollCourse("x", 40));
+        assertTrue(b.enrollCourse("y", 60));
+        assertTrue(a.enrollCourse("y", 40));
+        manager.openNextRound();
+        return manager;
+    }
 }
 
 
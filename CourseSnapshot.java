@@ -0,0 +1,170 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable copy of one course: the bids of the current round with their cutoff,
+ * the seats held from earlier rounds with the bid and round that won them, the
+ * waitlist and the successStudents, at one version of the course. Students are
+ * referred to by studentID.
+ */
+public final class CourseSnapshot {
+    private final String courseID;
+    private final String courseName;
+    private final int maxCapacity;
+    private final long version;
+    private final String[] studentIds;
+    private final int[] bids;
+    private final String[] seatIds;
+    private final int[] seatBids;
+    private final int[] seatRounds;
+    private final String[] waitlistIds;
+    private final int[] waitlistBids;
+    private final String[] successIds;
+    private final int cutoffBid;
+    private final boolean cutoffTied;
+
+    private CourseSnapshot(Course course) {
+        var ledger = course.getBids();
+        var tracker = ledger.getTracker();
+        courseID = course.getCourseID();
+        courseName = course.getCourseName();
+        maxCapacity = course.getMaxCapacity();
+        version = course.getVersion();
+        studentIds = new String[ledger.size()];
+        bids = new int[ledger.size()];
+        for (int slot = 0; slot < studentIds.length; slot++) {
+            studentIds[slot] = ledger.getStudent(slot).getStudentID();
+            bids[slot] = ledger.getBid(slot);
+        }
+        var seats = course.getSeats();
+        var seatSlots = seats.slotsByArrival();
+        seatIds = new String[seatSlots.length];
+        seatBids = new int[seatSlots.length];
+        seatRounds = new int[seatSlots.length];
+        for (int i = 0; i < seatSlots.length; i++) {
+            seatIds[i] = seats.getStudent(seatSlots[i]).getStudentID();
+            seatBids[i] = seats.getBid(seatSlots[i]);
+            seatRounds[i] = seats.getRound(seatSlots[i]);
+        }
+        var waitlist = course.getWaitlist();
+        var waitlistSlots = waitlist.slotsByArrival();
+        waitlistIds = new String[waitlistSlots.length];
+        waitlistBids = new int[waitlistSlots.length];
+        for (int i = 0; i < waitlistSlots.length; i++) {
+            waitlistIds[i] = waitlist.getStudent(waitlistSlots[i]).getStudentID();
+            waitlistBids[i] = waitlist.getBid(waitlistSlots[i]);
+        }
+        var successStudents = course.getSuccessStudents();
+        successIds = new String[successStudents.size()];
+        for (int i = 0; i < successIds.length; i++) {
+            successIds[i] = successStudents.get(i).getStudentID();
+        }
+        cutoffBid = tracker.hasCutoff() ? tracker.getCutoffBid() : 0;
+        cutoffTied = tracker.isCutoffTied();
+    }
+
+    /**
+     * Copy course. The caller holds the course lock.
+     */
+    static CourseSnapshot of(Course course) {
+        return new CourseSnapshot(course);
+    }
+
+    public String getCourseID() {
+        return courseID;
+    }
+
+    public String getCourseName() {
+        return courseName;
+    }
+
+    public int getMaxCapacity() {
+        return maxCapacity;
+    }
+
+    /**
+     * The course version this copy was taken at, see Course.getVersion.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public int getBidCount() {
+        return bids.length;
+    }
+
+    /**
+     * IDs of the bidding students, in the same order as getBid.
+     */
+    public List<String> getStudentIds() {
+        return Collections.unmodifiableList(Arrays.asList(studentIds));
+    }
+
+    public int getBid(int i) {
+        return bids[i];
+    }
+
+    public int getSeatCount() {
+        return seatBids.length;
+    }
+
+    /**
+     * IDs of the students holding a seat from an earlier round, in the order they
+     * were seated, matching getSeatBid and getSeatRound.
+     */
+    public List<String> getSeatStudentIds() {
+        return Collections.unmodifiableList(Arrays.asList(seatIds));
+    }
+
+    /**
+     * The bid that won seat i, which its student has paid.
+     */
+    public int getSeatBid(int i) {
+        return seatBids[i];
+    }
+
+    /**
+     * The round in which seat i was won.
+     */
+    public int getSeatRound(int i) {
+        return seatRounds[i];
+    }
+
+    public int getWaitlistCount() {
+        return waitlistBids.length;
+    }
+
+    /**
+     * IDs of the waitlisted students, in the order they lost, matching
+     * getWaitlistBid.
+     */
+    public List<String> getWaitlistStudentIds() {
+        return Collections.unmodifiableList(Arrays.asList(waitlistIds));
+    }
+
+    /**
+     * The losing bid of waitlist entry i, which a freed seat would cost.
+     */
+    public int getWaitlistBid(int i) {
+        return waitlistBids[i];
+    }
+
+    /**
+     * IDs of the successStudents, empty before finalization.
+     */
+    public List<String> getSuccessStudentIds() {
+        return Collections.unmodifiableList(Arrays.asList(successIds));
+    }
+
+    /**
+     * The highest bid left out by maxCapacity, or 0 if every bidder fit.
+     */
+    public int getCutoffBid() {
+        return cutoffBid;
+    }
+
+    public boolean isCutoffTied() {
+        return cutoffTied;
+    }
+}
@@ -0,0 +1,100 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The credit budget of one student: credits still available and credits
+ * committed to bids and seats, packed into one AtomicLong so that every
+ * operation moves credits between the two in a single compare-and-set. Their sum
+ * stays the budget the student started with unless setAvailable changes it.
+ */
+final class CreditAccount {
+    /**
+     * Available credits in the high half, committed credits in the low half.
+     */
+    private final AtomicLong state;
+
+    CreditAccount(int available) {
+        state = new AtomicLong(pack(available, 0));
+    }
+
+    int getAvailable() {
+        return available(state.get());
+    }
+
+    int getCommitted() {
+        return committed(state.get());
+    }
+
+    /**
+     * Both halves read together, for available(long) and committed(long).
+     */
+    long get() {
+        return state.get();
+    }
+
+    /**
+     * Move amount from available to committed. A negative amount moves credits
+     * back. Return false, changing nothing, if fewer than amount are available.
+     */
+    boolean tryCommit(int amount) {
+        while (true) {
+            long current = state.get();
+            int available = available(current);
+            if (available < amount) {
+                return false;
+            }
+            if (state.compareAndSet(current, pack(available - amount, committed(current) + amount))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Move amount from committed back to available, unconditionally. A negative
+     * amount commits credits even if that leaves available below zero.
+     */
+    void release(int amount) {
+        add(amount, -amount);
+    }
+
+    /**
+     * Snapshot restore: record amount as committed without touching available,
+     * for a seat whose payment the restored balance already reflects.
+     */
+    void addCommitted(int amount) {
+        add(0, amount);
+    }
+
+    /**
+     * Replace the available credits, keeping the committed ones.
+     */
+    void setAvailable(int available) {
+        while (true) {
+            long current = state.get();
+            if (state.compareAndSet(current, pack(available, committed(current)))) {
+                return;
+            }
+        }
+    }
+
+    private void add(int toAvailable, int toCommitted) {
+        while (true) {
+            long current = state.get();
+            if (state.compareAndSet(current,
+                    pack(available(current) + toAvailable, committed(current) + toCommitted))) {
+                return;
+            }
+        }
+    }
+
+    static int available(long state) {
+        return (int) (state >> 32);
+    }
+
+    static int committed(long state) {
+        return (int) state;
+    }
+
+    private static long pack(int available, int committed) {
+        return (long) available << 32 | committed & 0xffffffffL;
+    }
+}
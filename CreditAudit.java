@@ -0,0 +1,209 @@
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cross-checks the credit account of a student against the bids and seats that
+ * should explain it: the committed credits must equal the student's bids of the
+ * current round plus the seats they hold, and the available credits must not be
+ * negative.
+ * <p>
+ * A check costs O(k) in the courses the student bid on or got into, never a scan
+ * of the catalog, so it can stay on in production: a CourseManager given an audit
+ * with setCreditAudit checks the student of a sampled fraction of its successful
+ * operations. The locks of those courses are taken with tryLock; if one stays
+ * busy the check is counted as skipped rather than waited for.
+ */
+public final class CreditAudit {
+    private static final int ATTEMPTS = 3;
+
+    private final CourseManager manager;
+    private final double sampleRate;
+    private final boolean strict;
+
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder violations = new LongAdder();
+    private volatile String lastViolation;
+
+    /**
+     * @param manager    the manager, or router, whose courses the students bid on
+     * @param sampleRate fraction of operations followed by a check, from 0 to 1
+     * @param strict     whether a violation is thrown as IllegalStateException from
+     *                   the operation that revealed it, rather than only counted
+     */
+    public CreditAudit(CourseManager manager, double sampleRate, boolean strict) {
+        if (!(sampleRate >= 0 && sampleRate <= 1)) {
+            throw new IllegalArgumentException("Sample rate " + sampleRate);
+        }
+        this.manager = manager;
+        this.sampleRate = sampleRate;
+        this.strict = strict;
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Check student with probability sampleRate. Called by CourseManager after a
+     * successful operation, with no course lock held.
+     */
+    void sample(Student student) {
+        if (sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            check(student);
+        }
+    }
+
+    /**
+     * Check student now. Return the violation found, or null if the account
+     * balances or the check was skipped.
+     */
+    public String check(Student student) {
+        for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
+            int[] ids;
+            synchronized (student) {
+                ids = courseIds(student);
+            }
+            var locks = locksOf(ids);
+            int locked = 0;
+            while (locked < locks.length && locks[locked].tryLock()) {
+                locked++;
+            }
+            String violation;
+            try {
+                if (locked < locks.length) {
+                    continue;
+                }
+                // Every change to committed credits happens under the lock of a course
+                // the student holds, or under the student's monitor together with the
+                // list change that makes the course show up here.
+                synchronized (student) {
+                    if (!Arrays.equals(ids, courseIds(student))) {
+                        continue;
+                    }
+                    violation = balance(student);
+                }
+            } finally {
+                for (int i = 0; i < locked; i++) {
+                    locks[i].unlock();
+                }
+            }
+            checks.increment();
+            if (violation != null) {
+                violations.increment();
+                lastViolation = violation;
+                if (strict) {
+                    throw new IllegalStateException(violation);
+                }
+            }
+            return violation;
+        }
+        skipped.increment();
+        return null;
+    }
+
+    /**
+     * Compare the account of student with its bids and seats. The caller holds the
+     * student's monitor and the locks of all its courses.
+     */
+    private String balance(Student student) {
+        long expected = 0;
+        var enrolled = student.getEnrollCourseIds();
+        for (int i = 0; i < enrolled.size(); i++) {
+            var course = manager.getCourse(enrolled.get(i));
+            int slot = course.getBids().indexOf(student);
+            if (slot < 0) {
+                return "Student " + student.getStudentID() + " lists a bid on course "
+                        + enrolled.get(i) + " that its ledger does not hold";
+            }
+            expected += course.getBids().getBid(slot);
+        }
+        var succeeded = student.getSuccessCourseIds();
+        for (int i = 0; i < succeeded.size(); i++) {
+            var course = manager.getCourse(succeeded.get(i));
+            // A winner of the current round still holds a bid, counted above.
+            int slot = course.getSeats().indexOf(student);
+            if (slot >= 0) {
+                expected += course.getSeats().getBid(slot);
+            }
+        }
+        long state = student.getAccount().get();
+        int committed = CreditAccount.committed(state);
+        int available = CreditAccount.available(state);
+        if (committed != expected) {
+            return "Student " + student.getStudentID() + " has " + committed
+                    + " credits committed but " + expected + " in bids and seats";
+        }
+        if (available < 0) {
+            return "Student " + student.getStudentID() + " has " + available + " credits available";
+        }
+        return null;
+    }
+
+    /**
+     * The courses student bid on or got into, sorted and without repeats. The
+     * caller holds the student's monitor.
+     */
+    private static int[] courseIds(Student student) {
+        var enrolled = student.getEnrollCourseIds();
+        var succeeded = student.getSuccessCourseIds();
+        var ids = new int[enrolled.size() + succeeded.size()];
+        for (int i = 0; i < enrolled.size(); i++) {
+            ids[i] = enrolled.get(i);
+        }
+        for (int i = 0; i < succeeded.size(); i++) {
+            ids[enrolled.size() + i] = succeeded.get(i);
+        }
+        Arrays.sort(ids);
+        int count = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (i == 0 || ids[i] != ids[i - 1]) {
+                ids[count++] = ids[i];
+            }
+        }
+        return Arrays.copyOf(ids, count);
+    }
+
+    /**
+     * The distinct locks of the courses in ids.
+     */
+    private ReentrantLock[] locksOf(int[] ids) {
+        var locks = new ReentrantLock[ids.length];
+        int count = 0;
+        for (int id : ids) {
+            var lock = manager.lockOf(manager.getCourse(id));
+            int i = 0;
+            while (i < count && locks[i] != lock) {
+                i++;
+            }
+            if (i == count) {
+                locks[count++] = lock;
+            }
+        }
+        return Arrays.copyOf(locks, count);
+    }
+
+    public long getCheckCount() {
+        return checks.sum();
+    }
+
+    /**
+     * Checks given up because a course lock stayed busy.
+     */
+    public long getSkippedCount() {
+        return skipped.sum();
+    }
+
+    public long getViolationCount() {
+        return violations.sum();
+    }
+
+    /**
+     * Description of the latest violation, or null if none was found.
+     */
+    public String getLastViolation() {
+        return lastViolation;
+    }
+}
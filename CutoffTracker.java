@@ -0,0 +1,317 @@
+import java.util.Arrays;
+
+/**
+ * Order statistics over the bids of one BidLedger: which bids currently fall
+ * within maxCapacity and which are left out.
+ * <p>
+ * Slots are split between two indexed binary heaps. "top" is a min-heap holding
+ * the maxCapacity highest bids and "rest" is a max-heap holding all other bids, so
+ * the lowest bid that fits and the highest bid left out are the two roots. Equal
+ * bids rank by arrival in the ledger, earliest highest, so the heaps and both
+ * roots do not depend on the slot layout. Every
+ * slot knows its heap position, so adding, changing or removing a bid costs
+ * O(log n).
+ */
+class CutoffTracker {
+    private final BidLedger ledger;
+    private int capacity;
+
+    private int[] top;
+    private int topSize;
+    private int[] rest;
+    private int restSize;
+
+    /**
+     * Heap position of each slot: index into top, or ~index into rest.
+     */
+    private int[] position;
+
+    public CutoffTracker(BidLedger ledger, int slots) {
+        this.ledger = ledger;
+        top = new int[slots];
+        rest = new int[slots];
+        position = new int[slots];
+    }
+
+    public void grow(int slots) {
+        top = Arrays.copyOf(top, slots);
+        rest = Arrays.copyOf(rest, slots);
+        position = Arrays.copyOf(position, slots);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Change the number of seats, moving bids across the heaps as needed.
+     */
+    public void setCapacity(int capacity) {
+        this.capacity = Math.max(0, capacity);
+        rebalance();
+    }
+
+    /**
+     * Whether some bid is left out, i.e. there are more bids than seats.
+     */
+    public boolean hasCutoff() {
+        return restSize > 0;
+    }
+
+    /**
+     * The highest bid left out. Only meaningful if hasCutoff().
+     */
+    public int getCutoffBid() {
+        return ledger.getBid(rest[0]);
+    }
+
+    /**
+     * The slot of the highest bid left out, the earliest of equal bids. Only
+     * meaningful if hasCutoff().
+     */
+    public int getCutoffSlot() {
+        return rest[0];
+    }
+
+    /**
+     * Whether the lowest bid within capacity equals the highest bid left out, in
+     * which case the ClearingStrategy decides which of the bids equal to it get in.
+     */
+    public boolean isCutoffTied() {
+        return restSize > 0 && topSize > 0 && ledger.getBid(top[0]) == ledger.getBid(rest[0]);
+    }
+
+    /**
+     * The slots whose bid equals the cutoff bid, those within capacity first. Heap
+     * order means only nodes holding that bid and their children are visited, so
+     * this costs O(ties) rather than O(n). Only meaningful if hasCutoff().
+     */
+    public int[] getTiedSlots() {
+        int bid = getCutoffBid();
+        var tied = new int[8];
+        int count = 0;
+        var stack = new int[8];
+        for (int pass = 0; pass < 2; pass++) {
+            int[] heap = pass == 0 ? top : rest;
+            int size = pass == 0 ? topSize : restSize;
+            int depth = 0;
+            if (size > 0 && ledger.getBid(heap[0]) == bid) {
+                stack[depth++] = 0;
+            }
+            while (depth > 0) {
+                int i = stack[--depth];
+                if (count == tied.length) {
+                    tied = Arrays.copyOf(tied, count * 2);
+                }
+                tied[count++] = heap[i];
+                for (int child = 2 * i + 1; child <= 2 * i + 2 && child < size; child++) {
+                    if (ledger.getBid(heap[child]) == bid) {
+                        if (depth == stack.length) {
+                            stack = Arrays.copyOf(stack, depth * 2);
+                        }
+                        stack[depth++] = child;
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(tied, count);
+    }
+
+    /**
+     * Number of slots within capacity, counting the ones tied at the cutoff.
+     */
+    public int getTopSize() {
+        return topSize;
+    }
+
+    /**
+     * The i-th slot within capacity, in heap order.
+     */
+    public int getTop(int i) {
+        return top[i];
+    }
+
+    public void insert(int slot) {
+        pushRest(slot);
+        rebalance();
+    }
+
+    /**
+     * Restore heap order after the bid in slot changed.
+     */
+    public void update(int slot) {
+        int p = position[slot];
+        if (p >= 0) {
+            siftUpTop(p);
+            siftDownTop(position[slot]);
+        } else {
+            siftUpRest(~p);
+            siftDownRest(~position[slot]);
+        }
+        rebalance();
+    }
+
+    public void remove(int slot) {
+        int p = position[slot];
+        if (p >= 0) {
+            int last = top[--topSize];
+            if (p < topSize) {
+                placeTop(p, last);
+                siftUpTop(p);
+                siftDownTop(position[last]);
+            }
+        } else {
+            p = ~p;
+            int last = rest[--restSize];
+            if (p < restSize) {
+                placeRest(p, last);
+                siftUpRest(p);
+                siftDownRest(~position[last]);
+            }
+        }
+        rebalance();
+    }
+
+    /**
+     * The ledger moved the entry in slot from to slot to.
+     */
+    public void move(int from, int to) {
+        int p = position[from];
+        if (p >= 0) {
+            placeTop(p, to);
+        } else {
+            placeRest(~p, to);
+        }
+    }
+
+    /**
+     * Keep top at min(capacity, n) bids, all at least as high as any bid in rest.
+     */
+    private void rebalance() {
+        while (topSize < capacity && restSize > 0) {
+            pushTop(popRest());
+        }
+        while (topSize > capacity) {
+            pushRest(popTop());
+        }
+        while (topSize > 0 && restSize > 0 && above(rest[0], top[0])) {
+            int low = popTop();
+            pushTop(popRest());
+            pushRest(low);
+        }
+    }
+
+    private void pushTop(int slot) {
+        placeTop(topSize, slot);
+        siftUpTop(topSize++);
+    }
+
+    private int popTop() {
+        int root = top[0];
+        int last = top[--topSize];
+        if (topSize > 0) {
+            placeTop(0, last);
+            siftDownTop(0);
+        }
+        return root;
+    }
+
+    private void pushRest(int slot) {
+        placeRest(restSize, slot);
+        siftUpRest(restSize++);
+    }
+
+    private int popRest() {
+        int root = rest[0];
+        int last = rest[--restSize];
+        if (restSize > 0) {
+            placeRest(0, last);
+            siftDownRest(0);
+        }
+        return root;
+    }
+
+    private void siftUpTop(int i) {
+        int slot = top[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!above(top[parent], slot)) {
+                break;
+            }
+            placeTop(i, top[parent]);
+            i = parent;
+        }
+        placeTop(i, slot);
+    }
+
+    private void siftDownTop(int i) {
+        int slot = top[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= topSize) {
+                break;
+            }
+            if (child + 1 < topSize && above(top[child], top[child + 1])) {
+                child++;
+            }
+            if (above(top[child], slot)) {
+                break;
+            }
+            placeTop(i, top[child]);
+            i = child;
+        }
+        placeTop(i, slot);
+    }
+
+    private void siftUpRest(int i) {
+        int slot = rest[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (above(rest[parent], slot)) {
+                break;
+            }
+            placeRest(i, rest[parent]);
+            i = parent;
+        }
+        placeRest(i, slot);
+    }
+
+    private void siftDownRest(int i) {
+        int slot = rest[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= restSize) {
+                break;
+            }
+            if (child + 1 < restSize && above(rest[child + 1], rest[child])) {
+                child++;
+            }
+            if (!above(rest[child], slot)) {
+                break;
+            }
+            placeRest(i, rest[child]);
+            i = child;
+        }
+        placeRest(i, slot);
+    }
+
+    /**
+     * Whether the bid in slot a ranks above the one in slot b: higher, or equal and
+     * placed earlier.
+     */
+    private boolean above(int a, int b) {
+        int bidA = ledger.getBid(a);
+        int bidB = ledger.getBid(b);
+        return bidA != bidB ? bidA > bidB : ledger.getArrival(a) < ledger.getArrival(b);
+    }
+
+    private void placeTop(int i, int slot) {
+        top[i] = slot;
+        position[slot] = i;
+    }
+
+    private void placeRest(int i, int slot) {
+        rest[i] = slot;
+        position[slot] = ~i;
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * One change published on an EnrollmentEventBus.
+ * <p>
+ * Events are slots of the ring buffer and are reused once every subscriber has
+ * passed them, so a handler must copy whatever it keeps after it returns.
+ */
+public final class EnrollmentEvent {
+    public enum Type {
+        /**
+         * A bid was placed; credits is the bid.
+         */
+        ENROLL,
+        /**
+         * A bid was changed; credits is the new bid.
+         */
+        MODIFY,
+        /**
+         * A bid, seat or waitlist entry was dropped; credits is the refund.
+         */
+        DROP,
+        /**
+         * The student got a seat, by finalization or by promotion from the
+         * waitlist; credits is the winning bid.
+         */
+        ADMIT,
+        /**
+         * Recomputing the course took away a seat it had given the student.
+         */
+        REVOKE
+    }
+
+    private long sequence;
+    private Type type;
+    private String studentId;
+    private String courseId;
+    private int credits;
+
+    EnrollmentEvent() {
+    }
+
+    void set(Type type, String studentId, String courseId, int credits) {
+        this.type = type;
+        this.studentId = studentId;
+        this.courseId = courseId;
+        this.credits = credits;
+    }
+
+    void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * Position in the stream, starting at 0 and increasing by one per event.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getStudentId() {
+        return studentId;
+    }
+
+    public String getCourseId() {
+        return courseId;
+    }
+
+    public int getCredits() {
+        return credits;
+    }
+
+    @Override
+    public String toString() {
+        return sequence + " " + type + " " + studentId + " " + courseId + " " + credits;
+    }
+}
@@ -0,0 +1,231 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Bounded, lock-free stream of EnrollmentEvents, attached to a CourseManager with
+ * setEventBus.
+ * <p>
+ * Events live in a ring buffer of preallocated slots. Producers claim a range of
+ * sequences with one compareAndSet, fill the slots and mark them published; a
+ * batch of events costs one claim. Every Subscription reads the stream at its own
+ * pace, and a producer that would overwrite an event some subscriber has not read
+ * yet waits for it. A slow subscriber therefore slows down bidding instead of
+ * losing events, so subscribers should poll from their own threads and must not
+ * call back into the manager while producers may be waiting on them.
+ */
+public class EnrollmentEventBus {
+    private static final Subscription[] NONE = new Subscription[0];
+
+    private final EnrollmentEvent[] slots;
+    private final int mask;
+    private final int shift;
+
+    /**
+     * For each slot, the lap (sequence / size) of the event last published in it.
+     */
+    private final AtomicIntegerArray published;
+
+    /**
+     * Highest sequence handed out to a producer.
+     */
+    private final AtomicLong claimed = new AtomicLong(-1);
+
+    /**
+     * Lowest sequence read by every subscriber, as of the last check.
+     */
+    private volatile long gatingCache = -1;
+
+    private volatile Subscription[] subscriptions = NONE;
+
+    /**
+     * Fills the slots of a batch published with publish(int, EventFiller).
+     */
+    @FunctionalInterface
+    interface EventFiller {
+        void fill(EnrollmentEvent event, int index);
+    }
+
+    /**
+     * Create a bus holding bufferSize events, rounded up to a power of two.
+     */
+    public EnrollmentEventBus(int bufferSize) {
+        if (bufferSize < 1 || bufferSize > 1 << 30) {
+            throw new IllegalArgumentException("Buffer size " + bufferSize);
+        }
+        int size = Integer.highestOneBit(bufferSize * 2 - 1);
+        slots = new EnrollmentEvent[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new EnrollmentEvent();
+        }
+        mask = size - 1;
+        shift = Integer.numberOfTrailingZeros(size);
+        published = new AtomicIntegerArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1);
+        }
+    }
+
+    public int getBufferSize() {
+        return slots.length;
+    }
+
+    /**
+     * Start reading the events published from now on.
+     */
+    public synchronized Subscription subscribe() {
+        var subscription = new Subscription(claimed.get());
+        var current = subscriptions;
+        var next = Arrays.copyOf(current, current.length + 1);
+        next[current.length] = subscription;
+        subscriptions = next;
+        return subscription;
+    }
+
+    private synchronized void unsubscribe(Subscription subscription) {
+        var current = subscriptions;
+        var next = new Subscription[current.length];
+        int count = 0;
+        for (var other : current) {
+            if (other != subscription) {
+                next[count++] = other;
+            }
+        }
+        subscriptions = Arrays.copyOf(next, count);
+    }
+
+    /**
+     * Publish one event.
+     */
+    void publish(EnrollmentEvent.Type type, String studentId, String courseId, int credits) {
+        long sequence = claim(1);
+        var event = slots[(int) sequence & mask];
+        event.setSequence(sequence);
+        event.set(type, studentId, courseId, credits);
+        published.set((int) sequence & mask, (int) (sequence >>> shift));
+    }
+
+    /**
+     * Publish count events filled by filler, claiming at most a buffer of slots at
+     * a time.
+     */
+    void publish(int count, EventFiller filler) {
+        for (int done = 0; done < count; ) {
+            int n = Math.min(count - done, slots.length);
+            long high = claim(n);
+            long low = high - n + 1;
+            for (long sequence = low; sequence <= high; sequence++) {
+                var event = slots[(int) sequence & mask];
+                event.setSequence(sequence);
+                filler.fill(event, done++);
+            }
+            for (long sequence = low; sequence <= high; sequence++) {
+                published.set((int) sequence & mask, (int) (sequence >>> shift));
+            }
+        }
+    }
+
+    /**
+     * Claim the next n sequences, waiting while that would overwrite an event not
+     * yet read by every subscriber. Return the highest one.
+     */
+    private long claim(int n) {
+        int idle = 0;
+        while (true) {
+            long current = claimed.get();
+            long high = current + n;
+            long wrap = high - slots.length;
+            if (wrap > gatingCache) {
+                long min = minSequence(current);
+                gatingCache = min;
+                if (wrap > min) {
+                    idle = backOff(idle);
+                    continue;
+                }
+            }
+            if (claimed.compareAndSet(current, high)) {
+                return high;
+            }
+        }
+    }
+
+    private long minSequence(long current) {
+        long min = current;
+        for (var subscription : subscriptions) {
+            min = Math.min(min, subscription.sequence);
+        }
+        return min;
+    }
+
+    private static int backOff(int idle) {
+        if (idle < 100) {
+            Thread.onSpinWait();
+        } else if (idle < 200) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(10_000);
+        }
+        return idle + 1;
+    }
+
+    private boolean isPublished(long sequence) {
+        return published.get((int) sequence & mask) == (int) (sequence >>> shift);
+    }
+
+    /**
+     * A reader of the stream. Each subscription is read by one thread at a time,
+     * which should back off (yield or sleep) when a poll returns 0 rather than spin.
+     */
+    public final class Subscription implements AutoCloseable {
+        /**
+         * Last sequence read.
+         */
+        private volatile long sequence;
+
+        private Subscription(long sequence) {
+            this.sequence = sequence;
+        }
+
+        /**
+         * Hand every event published so far to handler, in sequence order. Return the
+         * number of events read.
+         */
+        public int poll(Consumer<EnrollmentEvent> handler) {
+            return poll(handler, Integer.MAX_VALUE);
+        }
+
+        /**
+         * Hand at most maxEvents published events to handler. Return the number of
+         * events read. The slots are released to producers once the batch is done.
+         */
+        public int poll(Consumer<EnrollmentEvent> handler, int maxEvents) {
+            long next = sequence + 1;
+            int count = 0;
+            while (count < maxEvents && isPublished(next + count)) {
+                handler.accept(slots[(int) (next + count) & mask]);
+                count++;
+            }
+            if (count > 0) {
+                sequence = next + count - 1;
+            }
+            return count;
+        }
+
+        /**
+         * Sequence of the last event read, -1 before the first.
+         */
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * Stop reading. Producers no longer wait for this subscription.
+         */
+        @Override
+        public void close() {
+            unsubscribe(this);
+        }
+    }
+}
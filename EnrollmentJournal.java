@@ -0,0 +1,701 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the changes made to a CourseManager, with periodic
+ * snapshots.
+ * <p>
+ * The directory holds snapshot.bin, a compact image of the whole manager, and
+ * journal.bin, every change applied since that snapshot. Both carry a generation
+ * number; a journal whose generation does not match the snapshot is left over from
+ * before the snapshot and is ignored. Each journal record is framed as
+ * [int length][int crc32][payload], so a record torn by a crash is detected and
+ * dropped on recovery.
+ * <p>
+ * A change is logged in two steps around applying it: its record is encoded and
+ * checked by prepare before, and appended after, so a change is applied only with
+ * its record. Appending copies the record into a direct buffer; when the buffer
+ * reaches the file depends on the Durability, GROUP by default: a change that has
+ * been reported as applied is lost in a process crash only if it was made within
+ * the last maxDelayMillis. Written records reach the storage device, and survive a
+ * power loss, only if setSyncOnFlush(true). The file is written with the buffers
+ * swapped, outside the monitor that appends take.
+ */
+class EnrollmentJournal implements AutoCloseable {
+    static final byte ADD_STUDENT = 1;
+    static final byte ADD_COURSE = 2;
+    static final byte ENROLL = 3;
+    static final byte MODIFY = 4;
+    static final byte DROP = 5;
+    static final byte FINALIZE = 6;
+    static final byte SET_OPEN = 7;
+    static final byte SET_CAPACITY = 8;
+    static final byte NEXT_ROUND = 9;
+    static final byte SET_STRATEGY = 10;
+
+    private static final byte DROP_ALL_TIES = 0;
+    private static final byte ADMIT_ALL_TIES = 1;
+    private static final byte LOTTERY = 2;
+
+    private static final int JOURNAL_MAGIC = 0x454a4e4c;
+    private static final int SNAPSHOT_MAGIC = 0x45534e35;
+    private static final int HEADER_SIZE = 12;
+    private static final int FRAME_SIZE = 8;
+    private static final int BUFFER_SIZE = 1 << 18;
+    private static final String JOURNAL = "journal.bin";
+    private static final String SNAPSHOT = "snapshot.bin";
+
+    /**
+     * When appended records are written to the file.
+     */
+    public enum Durability {
+        /**
+         * Only when the buffer fills up, on flush(), close() and checkpoints.
+         */
+        MANUAL,
+        /**
+         * Once maxPendingRecords are buffered, and at most maxDelayMillis after a
+         * record was appended, by a background flusher. Concurrent operations share
+         * one write.
+         */
+        GROUP,
+        /**
+         * Before append returns, so before the operation is reported as applied.
+         * Concurrent appends on other stripes share one write, and with
+         * syncOnFlush one force.
+         */
+        SYNC
+    }
+
+    private static final int DEFAULT_MAX_PENDING_RECORDS = 256;
+    private static final long DEFAULT_MAX_DELAY_MILLIS = 5;
+
+    private final Path directory;
+    private final FileChannel channel;
+    /**
+     * Orders the writes to the file, and is taken before the monitor. Appends only
+     * take the monitor, to copy a record into buffer.
+     */
+    private final Object writeLock = new Object();
+    /**
+     * Records appended since the last flush. A flush swaps it with spare, which is
+     * null while the flush writes it out.
+     */
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private ByteBuffer spare = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    /**
+     * Records appended so far; written counts those in the file, under writeLock.
+     */
+    private long appended;
+    private long written;
+    private long generation;
+
+    /**
+     * Whether flush() also forces the journal to the storage device.
+     */
+    private boolean syncOnFlush;
+
+    private Durability durability = Durability.GROUP;
+    private int maxPendingRecords = DEFAULT_MAX_PENDING_RECORDS;
+    private long maxDelayMillis = DEFAULT_MAX_DELAY_MILLIS;
+
+    /**
+     * Records appended since the last flush.
+     */
+    private int pendingRecords;
+
+    /**
+     * Runs the GROUP flushes, started on first use.
+     */
+    private ScheduledExecutorService flusher;
+    private ScheduledFuture<?> scheduledFlush;
+
+    /**
+     * Why a write failed. The buffered records were lost, so prepare refuses every
+     * later change.
+     */
+    private UncheckedIOException failure;
+
+    private EnrollmentJournal(Path directory, FileChannel channel, long generation) {
+        this.directory = directory;
+        this.channel = channel;
+        this.generation = generation;
+    }
+
+    /**
+     * Rebuild the manager saved in directory from its snapshot and journal, and
+     * attach a journal to it that continues where the old one ended. An empty or
+     * missing directory gives an empty manager.
+     */
+    public static JournaledCourseManager recover(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        var manager = new JournaledCourseManager();
+        long generation = 0;
+        var snapshot = directory.resolve(SNAPSHOT);
+        if (Files.exists(snapshot)) {
+            generation = readSnapshot(snapshot, manager);
+        }
+
+        var channel = FileChannel.open(directory.resolve(JOURNAL), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long end = HEADER_SIZE;
+        if (channel.size() >= HEADER_SIZE && readGeneration(channel) == generation) {
+            end = replay(channel, manager);
+        } else {
+            writeHeader(channel, generation);
+        }
+        // Cut off a torn record so that new records follow the last good one.
+        channel.truncate(end);
+        channel.position(end);
+
+        manager.setJournal(new EnrollmentJournal(directory, channel, generation));
+        return manager;
+    }
+
+    public synchronized void setSyncOnFlush(boolean syncOnFlush) {
+        this.syncOnFlush = syncOnFlush;
+    }
+
+    public synchronized Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * Choose when appended records are written. Records already buffered are
+     * written now.
+     */
+    public void setDurability(Durability durability) {
+        synchronized (this) {
+            this.durability = durability;
+        }
+        flush();
+    }
+
+    /**
+     * Bounds of the GROUP durability: flush once maxPendingRecords are buffered or
+     * maxDelayMillis after the oldest buffered record, whichever comes first.
+     */
+    public synchronized void setGroupCommit(int maxPendingRecords, long maxDelayMillis) {
+        if (maxPendingRecords < 1 || maxDelayMillis < 0) {
+            throw new IllegalArgumentException("Group commit " + maxPendingRecords + " records, "
+                    + maxDelayMillis + " ms");
+        }
+        this.maxPendingRecords = maxPendingRecords;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    static byte[] addStudentRecord(Student student) {
+        var record = beginRecord(ADD_STUDENT, Integer.BYTES, student.getStudentID(), student.getEmail(),
+                student.getName());
+        return endRecord(record.putInt(student.getCredits()));
+    }
+
+    static byte[] addCourseRecord(Course course) {
+        var record = beginRecord(ADD_COURSE, Integer.BYTES, course.getCourseID(), course.getCourseName());
+        return endRecord(record.putInt(course.getMaxCapacity()));
+    }
+
+    /**
+     * An ENROLL or MODIFY of student's bid on course to credits.
+     */
+    static byte[] bidRecord(byte type, Student student, Course course, int credits) {
+        var record = beginRecord(type, Integer.BYTES, student.getStudentID(), course.getCourseID());
+        return endRecord(record.putInt(credits));
+    }
+
+    static byte[] dropRecord(Student student, Course course) {
+        return endRecord(beginRecord(DROP, 0, student.getStudentID(), course.getCourseID()));
+    }
+
+    static byte[] finalizeRecord() {
+        return endRecord(beginRecord(FINALIZE, 0));
+    }
+
+    static byte[] setOpenRecord(boolean ifOpen) {
+        return endRecord(beginRecord(SET_OPEN, 1).put((byte) (ifOpen ? 1 : 0)));
+    }
+
+    static byte[] setCapacityRecord(Course course, int maxCapacity) {
+        return endRecord(beginRecord(SET_CAPACITY, Integer.BYTES, course.getCourseID()).putInt(maxCapacity));
+    }
+
+    static byte[] nextRoundRecord() {
+        return endRecord(beginRecord(NEXT_ROUND, 0));
+    }
+
+    /**
+     * A change of ClearingStrategy. Only DROP_ALL_TIES, ADMIT_ALL_TIES and
+     * lottery strategies can be journaled; any other throws
+     * IllegalArgumentException, since recovery could not clear like the live
+     * manager.
+     */
+    static byte[] setStrategyRecord(ClearingStrategy strategy) {
+        var record = beginRecord(SET_STRATEGY, 1 + Long.BYTES);
+        return endRecord(record.put(strategyKind(strategy)).putLong(strategySeed(strategy)));
+    }
+
+    private static byte strategyKind(ClearingStrategy strategy) {
+        if (strategy == ClearingStrategy.DROP_ALL_TIES) {
+            return DROP_ALL_TIES;
+        }
+        if (strategy == ClearingStrategy.ADMIT_ALL_TIES) {
+            return ADMIT_ALL_TIES;
+        }
+        if (strategy instanceof RankedClearing && ((RankedClearing) strategy).isLottery()) {
+            return LOTTERY;
+        }
+        throw new IllegalArgumentException("Clearing strategy cannot be journaled: " + strategy);
+    }
+
+    private static long strategySeed(ClearingStrategy strategy) {
+        return strategy instanceof RankedClearing ? ((RankedClearing) strategy).getSeed() : 0;
+    }
+
+    private static ClearingStrategy readStrategy(byte kind, long seed) {
+        return switch (kind) {
+            case DROP_ALL_TIES -> ClearingStrategy.DROP_ALL_TIES;
+            case ADMIT_ALL_TIES -> ClearingStrategy.ADMIT_ALL_TIES;
+            case LOTTERY -> ClearingStrategy.lottery(seed);
+            default -> throw new IllegalStateException("Unknown clearing strategy");
+        };
+    }
+
+    /**
+     * First half of logging a change: return record, encoded by one of the
+     * *Record methods, if the journal is open and can still take it, or throw why
+     * not. The
+     * caller calls this before applying the change and append after, so that a
+     * change is never applied without its record, nor reported as failed once
+     * applied.
+     */
+    byte[] prepare(byte[] record) {
+        synchronized (this) {
+            if (failure != null) {
+                throw failure;
+            }
+            if (!channel.isOpen()) {
+                throw new IllegalStateException("Journal closed: " + directory);
+            }
+        }
+        return record;
+    }
+
+    /**
+     * Second half of logging a change, once it is applied: buffer the record and,
+     * depending on the Durability, write it. Never throws; a failed write is kept
+     * and fails the prepare of every later change, which is then not applied.
+     * Records are written by the calling thread or the flusher, outside the
+     * journal's monitor, so appends on other stripes go on meanwhile.
+     */
+    void append(byte[] record) {
+        long sequence;
+        boolean flushNow;
+        while (true) {
+            synchronized (this) {
+                if (record.length <= buffer.remaining()) {
+                    buffer.put(record);
+                    sequence = ++appended;
+                    pendingRecords++;
+                    flushNow = durability == Durability.SYNC || durability == Durability.GROUP
+                            && (pendingRecords >= maxPendingRecords || maxDelayMillis == 0);
+                    if (!flushNow && durability == Durability.GROUP && scheduledFlush == null) {
+                        scheduleFlush();
+                    }
+                    break;
+                }
+            }
+            // Full: swap the buffer out and retry.
+            flushQuietly(0);
+        }
+        if (flushNow) {
+            flushQuietly(sequence);
+        }
+    }
+
+    /**
+     * Write the buffered records to the journal file.
+     */
+    public void flush() {
+        synchronized (writeLock) {
+            writeBuffer();
+        }
+    }
+
+    /**
+     * Swap in the spare buffer under the journal's monitor, then write the full one
+     * and force it if syncOnFlush. The caller holds writeLock, which orders the
+     * writes; appends only need the monitor.
+     */
+    private void writeBuffer() {
+        ByteBuffer full;
+        long upTo;
+        boolean force;
+        synchronized (this) {
+            pendingRecords = 0;
+            if (scheduledFlush != null) {
+                scheduledFlush.cancel(false);
+                scheduledFlush = null;
+            }
+            full = buffer;
+            buffer = spare;
+            spare = null;
+            upTo = appended;
+            force = syncOnFlush;
+        }
+        try {
+            full.flip();
+            while (full.hasRemaining()) {
+                channel.write(full);
+            }
+            if (force) {
+                channel.force(false);
+            }
+            written = upTo;
+        } catch (IOException e) {
+            var failure = new UncheckedIOException(e);
+            synchronized (this) {
+                if (this.failure == null) {
+                    this.failure = failure;
+                }
+            }
+            throw failure;
+        } finally {
+            full.clear();
+            synchronized (this) {
+                spare = full;
+            }
+        }
+    }
+
+    /**
+     * Write the buffered records unless the append numbered sequence, if positive,
+     * was already written by a flush that came first. A failure is kept by
+     * writeBuffer for the next prepare.
+     */
+    private void flushQuietly(long sequence) {
+        synchronized (writeLock) {
+            if (sequence > 0 && written >= sequence) {
+                return;
+            }
+            try {
+                writeBuffer();
+            } catch (UncheckedIOException e) {
+                // Kept in failure.
+            }
+        }
+    }
+
+    /**
+     * Replace the snapshot with the current state of manager and start an empty
+     * journal. The caller must keep manager from changing meanwhile.
+     */
+    void writeSnapshot(CourseManager manager) throws IOException {
+        synchronized (writeLock) {
+            writeBuffer();
+            long next = generation + 1;
+            var temp = directory.resolve(SNAPSHOT + ".tmp");
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                writeSnapshot(out, manager, next);
+            }
+            try (var file = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                file.force(true);
+            }
+            Files.move(temp, directory.resolve(SNAPSHOT), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+
+            channel.truncate(0);
+            writeHeader(channel, next);
+            channel.position(HEADER_SIZE);
+            channel.force(true);
+            generation = next;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (writeLock) {
+            writeBuffer();
+            synchronized (this) {
+                if (flusher != null) {
+                    flusher.shutdown();
+                }
+            }
+            channel.close();
+        }
+    }
+
+    /**
+     * Allocate a record of type with its frame reserved, and write its strings.
+     * Strings are written as a short byte length followed by UTF-8 bytes; tail is
+     * the size of the fields the caller puts after them.
+     */
+    private static ByteBuffer beginRecord(byte type, int tail, String... strings) {
+        int size = FRAME_SIZE + 1 + tail;
+        var bytes = new byte[strings.length][];
+        for (int i = 0; i < strings.length; i++) {
+            bytes[i] = strings[i].getBytes(StandardCharsets.UTF_8);
+            if (bytes[i].length > 0xffff) {
+                throw new IllegalArgumentException("Journal string too long: " + bytes[i].length + " bytes");
+            }
+            size += Short.BYTES + bytes[i].length;
+        }
+        if (size > BUFFER_SIZE) {
+            throw new IllegalArgumentException("Journal record too large: " + size + " bytes");
+        }
+        var record = ByteBuffer.allocate(size).position(FRAME_SIZE).put(type);
+        for (var b : bytes) {
+            record.putShort((short) b.length);
+            record.put(b);
+        }
+        return record;
+    }
+
+    /**
+     * Fill in the frame of a complete record and return its bytes.
+     */
+    private static byte[] endRecord(ByteBuffer record) {
+        var crc = new CRC32();
+        crc.update(record.array(), FRAME_SIZE, record.position() - FRAME_SIZE);
+        record.putInt(0, record.position() - FRAME_SIZE);
+        record.putInt(Integer.BYTES, (int) crc.getValue());
+        return record.array();
+    }
+
+    /**
+     * Run the GROUP flush after maxDelayMillis. The caller holds the monitor.
+     */
+    private void scheduleFlush() {
+        if (flusher == null) {
+            flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+                var thread = new Thread(task, "journal-flush " + directory);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        scheduledFlush = flusher.schedule(this::flushScheduled, maxDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The GROUP flush, run by the flusher unless a flush came first.
+     */
+    private void flushScheduled() {
+        synchronized (writeLock) {
+            synchronized (this) {
+                scheduledFlush = null;
+                if (pendingRecords == 0 || !channel.isOpen()) {
+                    return;
+                }
+            }
+            flushQuietly(0);
+        }
+    }
+
+    private static void writeHeader(FileChannel channel, long generation) throws IOException {
+        var header = ByteBuffer.allocate(HEADER_SIZE).putInt(JOURNAL_MAGIC).putLong(generation).flip();
+        channel.write(header, 0);
+    }
+
+    private static long readGeneration(FileChannel channel) throws IOException {
+        var header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        header.flip();
+        return header.getInt() == JOURNAL_MAGIC ? header.getLong() : -1;
+    }
+
+    /**
+     * Apply every intact record of the journal to manager. Return the file offset
+     * just past the last intact record.
+     */
+    private static long replay(FileChannel channel, CourseManager manager) throws IOException {
+        var records = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        records.position(HEADER_SIZE);
+        var crc = new CRC32();
+        while (records.remaining() >= FRAME_SIZE) {
+            int start = records.position();
+            int length = records.getInt();
+            int checksum = records.getInt();
+            if (length <= 0 || length > records.remaining()) {
+                records.position(start);
+                break;
+            }
+            var payload = records.slice().limit(length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                records.position(start);
+                break;
+            }
+            apply(payload, manager);
+            records.position(start + FRAME_SIZE + length);
+        }
+        return records.position();
+    }
+
+    private static void apply(ByteBuffer record, CourseManager manager) {
+        switch (record.get()) {
+            case ADD_STUDENT -> manager.addStudent(new Student(readString(record), readString(record),
+                    readString(record), record.getInt()));
+            case ADD_COURSE -> manager.addCourse(new Course(readString(record), readString(record),
+                    record.getInt()));
+            case ENROLL -> manager.restoreEnroll(manager.getStudent(readString(record)),
+                    manager.getCourse(readString(record)), record.getInt());
+            case MODIFY -> manager.restoreModify(manager.getStudent(readString(record)),
+                    manager.getCourse(readString(record)), record.getInt());
+            case DROP -> manager.restoreDrop(manager.getStudent(readString(record)),
+                    manager.getCourse(readString(record)));
+            case FINALIZE -> manager.finalizeEnrollments();
+            case SET_OPEN -> manager.setIfOpen(record.get() != 0);
+            case SET_CAPACITY -> manager.getCourse(readString(record)).setMaxCapacity(record.getInt());
+            case NEXT_ROUND -> manager.openNextRound();
+            case SET_STRATEGY -> manager.setClearingStrategy(readStrategy(record.get(), record.getLong()));
+            default -> throw new IllegalStateException("Unknown journal record");
+        }
+    }
+
+    private static String readString(ByteBuffer record) {
+        var bytes = new byte[Short.toUnsignedInt(record.getShort())];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Snapshot layout: magic, generation, ifOpen, round and clearing strategy; the
+     * courses; the students, each with the remaining credits and its bids in
+     * enrollCourses order; then the successStudents, bids, seats and waitlist of
+     * every course. The ledgers are written in arrival order, which decides between
+     * equal bids, each entry with its student, bid and round.
+     */
+    private static void writeSnapshot(DataOutputStream out, CourseManager manager, long generation)
+            throws IOException {
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeLong(generation);
+        out.writeBoolean(manager.getIfOpen());
+        out.writeInt(manager.getRound());
+        var strategy = manager.getClearingStrategy();
+        out.writeByte(strategyKind(strategy));
+        out.writeLong(strategySeed(strategy));
+
+        var courses = manager.getCourses();
+        out.writeInt(courses.size());
+        for (var course : courses) {
+            out.writeUTF(course.getCourseID());
+            out.writeUTF(course.getCourseName());
+            out.writeInt(course.getMaxCapacity());
+        }
+
+        var students = manager.getStudents();
+        out.writeInt(students.size());
+        for (var student : students) {
+            out.writeUTF(student.getStudentID());
+            out.writeUTF(student.getEmail());
+            out.writeUTF(student.getName());
+            out.writeInt(student.getCredits());
+            var enrollCourses = student.getEnrollCourses();
+            out.writeInt(enrollCourses.size());
+            for (var course : enrollCourses) {
+                var bids = course.getBids();
+                out.writeUTF(course.getCourseID());
+                out.writeInt(bids.getBid(bids.indexOf(student)));
+            }
+        }
+
+        for (var course : courses) {
+            var successStudents = course.getSuccessStudents();
+            out.writeInt(successStudents.size());
+            for (var student : successStudents) {
+                out.writeUTF(student.getStudentID());
+            }
+            writeEntries(out, course.getBids());
+            writeEntries(out, course.getSeats());
+            writeEntries(out, course.getWaitlist());
+        }
+    }
+
+    private static void writeEntries(DataOutputStream out, BidLedger ledger) throws IOException {
+        out.writeInt(ledger.size());
+        for (int slot : ledger.slotsByArrival()) {
+            out.writeUTF(ledger.getStudent(slot).getStudentID());
+            out.writeInt(ledger.getBid(slot));
+            out.writeInt(ledger.getRound(slot));
+        }
+    }
+
+    private static void readEntries(DataInputStream in, CourseManager manager, BidLedger ledger)
+            throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            var student = manager.getStudent(in.readUTF());
+            int bid = in.readInt();
+            ledger.add(student, bid, in.readInt());
+        }
+    }
+
+    /**
+     * Load the snapshot into an empty manager. Return its generation.
+     */
+    private static long readSnapshot(Path snapshot, CourseManager manager) throws IOException {
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a snapshot: " + snapshot);
+            }
+            long generation = in.readLong();
+            boolean ifOpen = in.readBoolean();
+            manager.restoreRound(in.readInt());
+            byte strategyKind = in.readByte();
+            manager.setClearingStrategy(readStrategy(strategyKind, in.readLong()));
+
+            int courseCount = in.readInt();
+            for (int i = 0; i < courseCount; i++) {
+                manager.addCourse(new Course(in.readUTF(), in.readUTF(), in.readInt()));
+            }
+
+            int studentCount = in.readInt();
+            for (int i = 0; i < studentCount; i++) {
+                var student = new Student(in.readUTF(), in.readUTF(), in.readUTF(), in.readInt());
+                manager.addStudent(student);
+                // The bids themselves are restored course by course, in arrival order.
+                int bidCount = in.readInt();
+                for (int j = 0; j < bidCount; j++) {
+                    student.getEnrollCourseIds().add(manager.getCourse(in.readUTF()).getId());
+                    student.getAccount().addCommitted(in.readInt());
+                }
+            }
+
+            for (var course : manager.getCourses()) {
+                int successCount = in.readInt();
+                for (int i = 0; i < successCount; i++) {
+                    var student = manager.getStudent(in.readUTF());
+                    course.getSuccessStudents().add(student);
+                    student.getSuccessCourseIds().addSorted(course.getId());
+                }
+                readEntries(in, manager, course.getBids());
+                var seats = course.getSeats();
+                readEntries(in, manager, seats);
+                // The saved balance has paid for the seats already; only commit them.
+                for (int i = 0; i < seats.size(); i++) {
+                    seats.getStudent(i).getAccount().addCommitted(seats.getBid(i));
+                }
+                readEntries(in, manager, course.getWaitlist());
+                course.updateOpenSeats();
+            }
+            manager.setIfOpen(ifOpen);
+            return generation;
+        }
+    }
+}
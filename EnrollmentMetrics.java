@@ -0,0 +1,40 @@
+/**
+ * Receives measurements from the CourseManager hot paths.
+ * <p>
+ * CourseManager only reads the clock when isEnabled() is true, so the default
+ * NOOP instance costs one volatile read and a branch per operation.
+ */
+public interface EnrollmentMetrics {
+    enum Operation {
+        ENROLL, MODIFY, DROP
+    }
+
+    EnrollmentMetrics NOOP = new EnrollmentMetrics() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+
+        @Override
+        public void record(Operation operation, RejectReason rejection, long nanos) {
+        }
+
+        @Override
+        public void recordCourseFinalized(long nanos) {
+        }
+    };
+
+    boolean isEnabled();
+
+    /**
+     * Record one bidding operation that took nanos.
+     *
+     * @param rejection why it was refused, or null if it succeeded
+     */
+    void record(Operation operation, RejectReason rejection, long nanos);
+
+    /**
+     * Record the clearing of one course by finalizeEnrollments.
+     */
+    void recordCourseFinalized(long nanos);
+}
@@ -0,0 +1,37 @@
+import java.util.Map;
+
+/**
+ * JMX view of StripedEnrollmentMetrics. Latencies are in nanoseconds.
+ */
+public interface EnrollmentMetricsMXBean {
+    long getEnrollCount();
+
+    long getModifyCount();
+
+    long getDropCount();
+
+    /**
+     * Rejections keyed by "OPERATION/REASON", e.g. "ENROLL/INSUFFICIENT_CREDITS".
+     */
+    Map<String, Long> getRejectionCounts();
+
+    long getEnrollLatencyP50();
+
+    long getEnrollLatencyP99();
+
+    long getModifyLatencyP99();
+
+    long getDropLatencyP99();
+
+    long getFinalizedCourseCount();
+
+    long getFinalizeCourseLatencyP99();
+
+    /**
+     * Latency at percentile (0-100) of ENROLL, MODIFY or DROP, both accepted and
+     * rejected.
+     */
+    long getLatencyPercentile(String operation, double percentile);
+
+    void reset();
+}
@@ -0,0 +1,355 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Immutable index of the outcome of one finalizeEnrollments, built by the manager
+ * right after clearing and read with CourseManager.getResults().
+ * <p>
+ * Who got into a course, a student's schedule and each course's clearing bid are
+ * all hash lookups, without touching the bids or taking any lock. Each
+ * finalization reads only the courses it cleared and stores them, with the
+ * schedules they change, as a layer over the previous index, which is shared and
+ * not copied; a finalization that cleared nothing keeps the previous index. Rendered
+ * schedules are optionally kept in a size-bounded LRU cache; since the index never
+ * changes, cached strings never go stale.
+ */
+public final class EnrollmentResults {
+    private static final class CourseResult {
+        final String[] studentIds;
+        final int[] bids;
+        final Map<String, Integer> positions;
+        final int cutoffBid;
+        final boolean cutoffTied;
+
+        CourseResult(String[] studentIds, int[] bids, int cutoffBid, boolean cutoffTied) {
+            this.studentIds = studentIds;
+            this.bids = bids;
+            this.cutoffBid = cutoffBid;
+            this.cutoffTied = cutoffTied;
+            positions = new HashMap<>((int) (studentIds.length / 0.75f) + 1);
+            for (int i = 0; i < studentIds.length; i++) {
+                positions.put(studentIds[i], i);
+            }
+        }
+    }
+
+    /**
+     * The courses of one student in course order, i.e. by dense course ID.
+     */
+    private static final class Schedule {
+        final ArrayList<String> courseIds = new ArrayList<>(4);
+        final IntList ids = new IntList();
+        final IntList bids = new IntList();
+
+        void add(int id, String courseId, int bid) {
+            ids.add(id);
+            courseIds.add(courseId);
+            bids.add(bid);
+        }
+
+        /**
+         * Append entry i of from.
+         */
+        void add(Schedule from, int i) {
+            add(from.ids.values[i], from.courseIds.get(i), from.bids.values[i]);
+        }
+
+        int size() {
+            return courseIds.size();
+        }
+
+        /**
+         * The entries of a and b, either of which may be null, in course order.
+         * Entries of a for courses in skip are left out.
+         */
+        static Schedule merge(Schedule a, Schedule b, HashSet<String> skip) {
+            var merged = new Schedule();
+            int i = 0;
+            int j = 0;
+            int aSize = a == null ? 0 : a.size();
+            int bSize = b == null ? 0 : b.size();
+            while (i < aSize || j < bSize) {
+                if (j == bSize || i < aSize && a.ids.values[i] < b.ids.values[j]) {
+                    if (skip == null || !skip.contains(a.courseIds.get(i))) {
+                        merged.add(a, i);
+                    }
+                    i++;
+                } else {
+                    merged.add(b, j++);
+                }
+            }
+            return merged;
+        }
+    }
+
+    /**
+     * Growable int array for the bids of a schedule under construction.
+     */
+    private static final class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
+    /**
+     * Map from ID to value kept as a stack of layers, each holding the entries one
+     * update changed, newest on top; a null value removes its key. Adding a layer
+     * merges it into the one below while that is at most twice as large, so there
+     * are O(log n) layers, an entry is copied O(log n) times over all updates, and
+     * the large bottom layer is only copied once the layers above outgrow it.
+     */
+    private static final class LayeredMap<V> {
+        private final HashMap<String, V> entries;
+        private final LayeredMap<V> below;
+
+        LayeredMap(HashMap<String, V> entries) {
+            this(entries, null);
+        }
+
+        private LayeredMap(HashMap<String, V> entries, LayeredMap<V> below) {
+            this.entries = entries;
+            this.below = below;
+        }
+
+        V get(String key) {
+            for (var layer = this; layer != null; layer = layer.below) {
+                var value = layer.entries.get(key);
+                if (value != null || layer.entries.containsKey(key)) {
+                    return value;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * This map with changes applied. changes is taken over, not copied.
+         */
+        LayeredMap<V> with(HashMap<String, V> changes) {
+            var top = changes;
+            var rest = this;
+            while (rest != null && rest.entries.size() <= 2 * top.size()) {
+                var merged = new HashMap<>(rest.entries);
+                merged.putAll(top);
+                top = merged;
+                rest = rest.below;
+            }
+            if (rest == null) {
+                top.values().removeIf(Objects::isNull);
+            }
+            return new LayeredMap<>(top, rest);
+        }
+
+        /**
+         * All entries in one map, the newest value of each key winning. Not to be
+         * changed, as it may be the bottom layer itself.
+         */
+        HashMap<String, V> flatten() {
+            if (below == null) {
+                return entries;
+            }
+            var layers = new ArrayList<HashMap<String, V>>();
+            for (var layer = this; layer != null; layer = layer.below) {
+                layers.add(layer.entries);
+            }
+            var flat = new HashMap<String, V>();
+            for (int i = layers.size() - 1; i >= 0; i--) {
+                flat.putAll(layers.get(i));
+            }
+            flat.values().removeIf(Objects::isNull);
+            return flat;
+        }
+    }
+
+    private final LayeredMap<CourseResult> courses;
+    private final LayeredMap<Schedule> schedules;
+    private final int cacheSize;
+    private final Map<String, String> rendered;
+
+    private EnrollmentResults(LayeredMap<CourseResult> courses, LayeredMap<Schedule> schedules, int cacheSize) {
+        this.courses = courses;
+        this.schedules = schedules;
+        this.cacheSize = cacheSize;
+        this.rendered = cacheSize <= 0 ? null : Collections.synchronizedMap(
+                new LinkedHashMap<>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                        return size() > cacheSize;
+                    }
+                });
+    }
+
+    /**
+     * Index the successStudents of courses, given in course order. Each course is
+     * read under its lock in manager.
+     */
+    static EnrollmentResults build(CourseManager manager, List<Course> courses, int cacheSize) {
+        var courseResults = new HashMap<String, CourseResult>((int) (courses.size() / 0.75f) + 1);
+        var schedules = new HashMap<String, Schedule>();
+        for (var course : courses) {
+            courseResults.put(course.getCourseID(), read(manager, course, schedules));
+        }
+        return new EnrollmentResults(new LayeredMap<>(courseResults), new LayeredMap<>(schedules), cacheSize);
+    }
+
+    /**
+     * The index of previous with changed, the courses cleared since, read again.
+     * Only changed and the schedules of the students they admit or admitted are
+     * stored anew, as a layer over previous. previous itself is returned if
+     * nothing changed.
+     */
+    static EnrollmentResults update(EnrollmentResults previous, CourseManager manager, Course[] changed,
+                                    int cacheSize) {
+        if (changed.length == 0) {
+            return cacheSize == previous.cacheSize ? previous
+                    : new EnrollmentResults(previous.courses, previous.schedules, cacheSize);
+        }
+        var courseResults = new HashMap<String, CourseResult>((int) (changed.length / 0.75f) + 1);
+        var additions = new HashMap<String, Schedule>();
+        var changedIds = new HashSet<String>();
+        var affected = new HashSet<String>();
+        for (var course : changed) {
+            var old = previous.courses.get(course.getCourseID());
+            if (old != null) {
+                affected.addAll(Arrays.asList(old.studentIds));
+            }
+            changedIds.add(course.getCourseID());
+            courseResults.put(course.getCourseID(), read(manager, course, additions));
+        }
+        affected.addAll(additions.keySet());
+
+        var schedules = new HashMap<String, Schedule>((int) (affected.size() / 0.75f) + 1);
+        for (var studentId : affected) {
+            var schedule = Schedule.merge(previous.schedules.get(studentId), additions.get(studentId), changedIds);
+            schedules.put(studentId, schedule.size() == 0 ? null : schedule);
+        }
+        return new EnrollmentResults(previous.courses.with(courseResults), previous.schedules.with(schedules),
+                cacheSize);
+    }
+
+    /**
+     * Index the successStudents of course under its lock, appending the course to
+     * their schedules.
+     */
+    private static CourseResult read(CourseManager manager, Course course, HashMap<String, Schedule> schedules) {
+        var lock = manager.lockOf(course);
+        lock.lock();
+        try {
+            var successStudents = course.getSuccessStudents();
+            var ids = new String[successStudents.size()];
+            var bids = new int[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                var student = successStudents.get(i);
+                ids[i] = student.getStudentID();
+                bids[i] = CourseManager.admittedBid(course, student);
+                schedules.computeIfAbsent(ids[i], id -> new Schedule()).add(course.getId(), course.getCourseID(), bids[i]);
+            }
+            var tracker = course.getBids().getTracker();
+            return new CourseResult(ids, bids, tracker.hasCutoff() ? tracker.getCutoffBid() : 0,
+                    tracker.isCutoffTied());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Combine the results of managers owning disjoint courses.
+     */
+    static EnrollmentResults merge(EnrollmentResults[] parts, int cacheSize) {
+        var courseResults = new HashMap<String, CourseResult>();
+        var schedules = new HashMap<String, Schedule>();
+        for (var part : parts) {
+            courseResults.putAll(part.courses.flatten());
+            for (var entry : part.schedules.flatten().entrySet()) {
+                schedules.merge(entry.getKey(), entry.getValue(), (a, b) -> Schedule.merge(a, b, null));
+            }
+        }
+        return new EnrollmentResults(new LayeredMap<>(courseResults), new LayeredMap<>(schedules), cacheSize);
+    }
+
+    /**
+     * IDs of the students admitted to courseId, highest bid first; empty for an
+     * unknown course.
+     */
+    public List<String> getAdmittedStudentIds(String courseId) {
+        var result = courses.get(courseId);
+        return result == null ? List.of() : Collections.unmodifiableList(Arrays.asList(result.studentIds));
+    }
+
+    public boolean isAdmitted(String studentId, String courseId) {
+        var result = courses.get(courseId);
+        return result != null && result.positions.containsKey(studentId);
+    }
+
+    /**
+     * The bid with which studentId got into courseId, or -1 if they did not.
+     */
+    public int getAdmittedBid(String studentId, String courseId) {
+        var result = courses.get(courseId);
+        Integer position = result == null ? null : result.positions.get(studentId);
+        return position == null ? -1 : result.bids[position];
+    }
+
+    /**
+     * The highest bid courseId left out, 0 if every bidder got in, or -1 for an
+     * unknown course.
+     */
+    public int getClearingBid(String courseId) {
+        var result = courses.get(courseId);
+        return result == null ? -1 : result.cutoffBid;
+    }
+
+    public boolean isClearingTied(String courseId) {
+        var result = courses.get(courseId);
+        return result != null && result.cutoffTied;
+    }
+
+    /**
+     * IDs of the courses studentId got into, in course order, as
+     * Student.getSuccessCourses lists them.
+     */
+    public List<String> getSchedule(String studentId) {
+        var schedule = schedules.get(studentId);
+        return schedule == null ? List.of() : Collections.unmodifiableList(schedule.courseIds);
+    }
+
+    /**
+     * The schedule of studentId as "courseID: credits" lines, credits being the
+     * winning bid. Served from the LRU cache when one is configured.
+     */
+    public String renderSchedule(String studentId) {
+        if (rendered == null) {
+            return render(studentId);
+        }
+        var text = rendered.get(studentId);
+        if (text == null) {
+            text = render(studentId);
+            rendered.put(studentId, text);
+        }
+        return text;
+    }
+
+    private String render(String studentId) {
+        var schedule = schedules.get(studentId);
+        if (schedule == null) {
+            return "";
+        }
+        var out = new StringBuilder(schedule.courseIds.size() * 16);
+        for (int i = 0; i < schedule.courseIds.size(); i++) {
+            out.append(schedule.courseIds.get(i)).append(": ").append(schedule.bids.values[i]).append('\n');
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,112 @@
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash table from int keys to positions in the arrays of its
+ * owner, shared by BidLedger and CourseIdList. The owner keeps the key of every
+ * position in an int array and passes it to each call, since the array is
+ * replaced when it grows. Linear probing; deleting shifts later entries of the
+ * probe sequence back, so no tombstones are needed.
+ * <p>
+ * Keys need not be unique: a lookup walks the probe sequence of a key with first,
+ * next and positionAt, and the owner decides which position matches.
+ */
+final class IntIndex {
+    static final int NONE = -1;
+
+    private final int[] table;
+    private final int mask;
+
+    /**
+     * An empty table for up to capacity positions, a power of two at least twice
+     * as large.
+     */
+    IntIndex(int capacity) {
+        table = new int[Integer.highestOneBit(Math.max(1, capacity - 1)) << 2];
+        Arrays.fill(table, NONE);
+        mask = table.length - 1;
+    }
+
+    /**
+     * The first bucket of the probe sequence of key.
+     */
+    int first(int key) {
+        return hash(key) & mask;
+    }
+
+    int next(int bucket) {
+        return (bucket + 1) & mask;
+    }
+
+    /**
+     * The position in bucket, or NONE once the probe sequence has ended.
+     */
+    int positionAt(int bucket) {
+        return table[bucket];
+    }
+
+    /**
+     * Get the position whose key is key, or NONE. For owners whose keys are unique.
+     */
+    int find(int key, int[] keys) {
+        for (int i = first(key); table[i] != NONE; i = next(i)) {
+            if (keys[table[i]] == key) {
+                return table[i];
+            }
+        }
+        return NONE;
+    }
+
+    void insert(int position, int[] keys) {
+        int i = first(keys[position]);
+        while (table[i] != NONE) {
+            i = next(i);
+        }
+        table[i] = position;
+    }
+
+    /**
+     * Point the bucket of position, whose key is still in keys, at newPosition,
+     * for an entry about to move there.
+     */
+    void move(int position, int newPosition, int[] keys) {
+        table[bucketOf(position, keys)] = newPosition;
+    }
+
+    /**
+     * Remove the bucket pointing at position, whose key is still in keys.
+     */
+    void delete(int position, int[] keys) {
+        int i = bucketOf(position, keys);
+        int j = i;
+        while (true) {
+            j = next(j);
+            if (table[j] == NONE) {
+                break;
+            }
+            int home = first(keys[table[j]]);
+            // Move table[j] back unless its home lies cyclically in (i, j].
+            if (i <= j ? (i < home && home <= j) : (i < home || home <= j)) {
+                continue;
+            }
+            table[i] = table[j];
+            i = j;
+        }
+        table[i] = NONE;
+    }
+
+    private int bucketOf(int position, int[] keys) {
+        int i = first(keys[position]);
+        while (table[i] != position) {
+            i = next(i);
+        }
+        return i;
+    }
+
+    /**
+     * Spread the keys across the table; dense IDs are consecutive.
+     */
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
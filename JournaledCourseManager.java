@@ -0,0 +1,33 @@
+import java.io.IOException;
+
+/**
+ * A CourseManager that logs every change to an EnrollmentJournal, created by
+ * EnrollmentJournal.recover. Journaling lives here rather than in CourseManager,
+ * so that managers which cannot be journaled, such as ShardedCourseManager, do not
+ * inherit it.
+ */
+public class JournaledCourseManager extends CourseManager {
+    JournaledCourseManager() {
+    }
+
+    /**
+     * The journal every change is logged to.
+     */
+    @Override
+    public EnrollmentJournal getJournal() {
+        return super.getJournal();
+    }
+
+    /**
+     * Write a snapshot of the whole state to the journal directory and start a new,
+     * empty journal. Bidding is paused while the snapshot is written.
+     */
+    public void checkpoint() throws IOException {
+        lockAll();
+        try {
+            getJournal().writeSnapshot(this);
+        } finally {
+            unlockAll();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Concurrent log-linear histogram of durations in nanoseconds, in the style of
+ * HdrHistogram: every power of two is split into 32 linear buckets, so recorded
+ * values keep about 3% precision from 1 ns up to about 18 minutes.
+ * <p>
+ * Counts are striped over several arrays by thread, so threads recording at once
+ * rarely touch the same cache line. Reads sum the stripes and are not atomic.
+ */
+class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int MAX_BITS = 40;
+    private static final int BUCKETS = (MAX_BITS - SUB_BITS + 1) * SUB_BUCKETS;
+    private static final int STRIPES = 8;
+
+    private final AtomicLongArray[] stripes = new AtomicLongArray[STRIPES];
+
+    public LatencyHistogram() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new AtomicLongArray(BUCKETS);
+        }
+    }
+
+    public void record(long nanos) {
+        var stripe = stripes[(int) Thread.currentThread().getId() & (STRIPES - 1)];
+        stripe.incrementAndGet(bucketOf(nanos));
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (var stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                count += stripe.get(i);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get the value at percentile (0-100), or 0 if nothing was recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        var counts = new long[BUCKETS];
+        long total = 0;
+        for (var stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] += stripe.get(i);
+            }
+        }
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return highestValueOf(i);
+            }
+        }
+        return highestValueOf(BUCKETS - 1);
+    }
+
+    public void reset() {
+        for (var stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                stripe.set(i, 0);
+            }
+        }
+    }
+
+    /**
+     * Values below 64 get a bucket each; above, bucket b of a power of two 2^m
+     * covers 2^(m-5) values.
+     */
+    static int bucketOf(long nanos) {
+        long value = Math.min(Math.max(nanos, 0), (1L << MAX_BITS) - 1);
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * Highest value that falls into bucket.
+     */
+    static long highestValueOf(int bucket) {
+        int group = bucket / SUB_BUCKETS;
+        if (group == 0) {
+            return bucket;
+        }
+        long sub = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << (group - 1)) - 1;
+    }
+}
@@ -0,0 +1,105 @@
+import java.util.function.ToLongFunction;
+
+/**
+ * ClearingStrategy admitting the tied students of highest rank: priority first,
+ * then a seeded draw, then student ID. The best seats students are moved to the
+ * front with a quickselect, in expected O(count), without sorting the ties.
+ */
+final class RankedClearing implements ClearingStrategy {
+    /**
+     * Priority of a student, or null to rank by the draw alone.
+     */
+    private final ToLongFunction<Student> priority;
+    private final long seed;
+
+    RankedClearing(ToLongFunction<Student> priority, long seed) {
+        this.priority = priority;
+        this.seed = seed;
+    }
+
+    /**
+     * Whether this is a plain lottery, which EnrollmentJournal can record by its
+     * seed.
+     */
+    boolean isLottery() {
+        return priority == null;
+    }
+
+    long getSeed() {
+        return seed;
+    }
+
+    @Override
+    public int admitTied(String courseId, Student[] tied, int count, int seats) {
+        if (seats <= 0) {
+            return 0;
+        }
+        var ranks = new long[count];
+        var draws = new long[count];
+        long courseSeed = mix(seed ^ courseId.hashCode());
+        for (int i = 0; i < count; i++) {
+            ranks[i] = priority == null ? 0 : priority.applyAsLong(tied[i]);
+            draws[i] = mix(courseSeed + tied[i].getStudentID().hashCode());
+        }
+        select(tied, ranks, draws, count, seats - 1);
+        return seats;
+    }
+
+    /**
+     * Partially order tied[0, count) so that position k holds the entry of rank k
+     * and every entry before it ranks higher.
+     */
+    private static void select(Student[] tied, long[] ranks, long[] draws, int count, int k) {
+        int low = 0;
+        int high = count - 1;
+        while (low < high) {
+            swap(tied, ranks, draws, (low + high) >>> 1, high);
+            int store = low;
+            for (int i = low; i < high; i++) {
+                if (before(tied, ranks, draws, i, high)) {
+                    swap(tied, ranks, draws, i, store++);
+                }
+            }
+            swap(tied, ranks, draws, store, high);
+            if (store == k) {
+                return;
+            }
+            if (store < k) {
+                low = store + 1;
+            } else {
+                high = store - 1;
+            }
+        }
+    }
+
+    private static boolean before(Student[] tied, long[] ranks, long[] draws, int i, int j) {
+        if (ranks[i] != ranks[j]) {
+            return ranks[i] > ranks[j];
+        }
+        if (draws[i] != draws[j]) {
+            return draws[i] > draws[j];
+        }
+        return tied[i].getStudentID().compareTo(tied[j].getStudentID()) < 0;
+    }
+
+    private static void swap(Student[] tied, long[] ranks, long[] draws, int i, int j) {
+        var student = tied[i];
+        tied[i] = tied[j];
+        tied[j] = student;
+        long rank = ranks[i];
+        ranks[i] = ranks[j];
+        ranks[j] = rank;
+        long draw = draws[i];
+        draws[i] = draws[j];
+        draws[j] = draw;
+    }
+
+    /**
+     * SplitMix64 finalizer.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,17 @@
+/**
+ * Why a bidding operation was refused.
+ */
+public enum RejectReason {
+    /**
+     * ifOpen is false.
+     */
+    CLOSED,
+    UNKNOWN_COURSE,
+    /**
+     * An enrollment bid of 0 or less.
+     */
+    INVALID_CREDITS,
+    INSUFFICIENT_CREDITS,
+    ALREADY_ENROLLED,
+    NOT_ENROLLED
+}
@@ -0,0 +1,325 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A CourseManager that partitions its courses across several shard managers, each
+ * with its own locks, dirty queue and finalization, and routes every call to the
+ * shard owning the course.
+ * <p>
+ * Students are registered with the router only and are shared by all shards.
+ * Their credits are the single balance every shard debits with Student.tryDebit,
+ * an atomic reserve-or-fail, so a student bidding on courses of different shards
+ * at the same time can never spend more than they have. Course IDs are dense
+ * across the shards: shard i hands out i, i + n, i + 2n, ...
+ * <p>
+ * A submitBids sheet is all-or-nothing even when it spans shards: the router
+ * takes the locks of all its courses, shard by shard and stripe by stripe, checks
+ * the whole sheet, charges the student once and applies each part through its
+ * shard. The router is not journaled: only a JournaledCourseManager, which
+ * EnrollmentJournal.recover creates, logs its changes.
+ */
+public class ShardedCourseManager extends CourseManager {
+    private final CourseManager[] shards;
+
+    /**
+     * The shard results last merged by getResults, and the merged index.
+     */
+    private static final class MergedResults {
+        final EnrollmentResults[] parts;
+        final EnrollmentResults results;
+
+        MergedResults(EnrollmentResults[] parts, EnrollmentResults results) {
+            this.parts = parts;
+            this.results = results;
+        }
+    }
+
+    private volatile MergedResults merged;
+
+    public ShardedCourseManager(int shardCount) {
+        this(shardCount, DEFAULT_LOCK_STRIPES);
+    }
+
+    public ShardedCourseManager(int shardCount, int lockStripesPerShard) {
+        super(1);
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count " + shardCount);
+        }
+        shards = new CourseManager[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new CourseManager(lockStripesPerShard, i, shardCount);
+        }
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * The shard owning courseId, whether or not the course exists.
+     */
+    public int shardOf(String courseId) {
+        int h = courseId.hashCode();
+        return Math.floorMod(h ^ (h >>> 16), shards.length);
+    }
+
+    private CourseManager shardFor(String courseId) {
+        return shards[shardOf(courseId)];
+    }
+
+    /**
+     * Courses of every shard, shard by shard. A new list on every call.
+     */
+    @Override
+    public ArrayList<Course> getCourses() {
+        var courses = new ArrayList<Course>();
+        for (var shard : shards) {
+            courses.addAll(shard.getCourses());
+        }
+        return courses;
+    }
+
+    @Override
+    public void ensureCapacity(int studentCount, int courseCount) {
+        super.ensureCapacity(studentCount, 0);
+        for (var shard : shards) {
+            shard.ensureCapacity(0, courseCount / shards.length + 1);
+        }
+    }
+
+    @Override
+    public void setIfOpen(Boolean ifOpen) {
+        super.setIfOpen(ifOpen);
+        for (var shard : shards) {
+            shard.setIfOpen(ifOpen);
+        }
+    }
+
+    @Override
+    public void setMetrics(EnrollmentMetrics metrics) {
+        super.setMetrics(metrics);
+        for (var shard : shards) {
+            shard.setMetrics(metrics);
+        }
+    }
+
+    /**
+     * Set on every shard, which checks the students of its own operations. The
+     * audit should be built over this router so that it sees all their courses.
+     */
+    @Override
+    public void setCreditAudit(CreditAudit creditAudit) {
+        super.setCreditAudit(creditAudit);
+        for (var shard : shards) {
+            shard.setCreditAudit(creditAudit);
+        }
+    }
+
+    @Override
+    public void setEventBus(EnrollmentEventBus events) {
+        super.setEventBus(events);
+        for (var shard : shards) {
+            shard.setEventBus(events);
+        }
+    }
+
+    @Override
+    public ClearingStrategy getClearingStrategy() {
+        return shards[0].getClearingStrategy();
+    }
+
+    @Override
+    public void setClearingStrategy(ClearingStrategy strategy) {
+        for (var shard : shards) {
+            shard.setClearingStrategy(strategy);
+        }
+    }
+
+    @Override
+    public void addCourse(Course course) {
+        shardFor(course.getCourseID()).addCourse(course);
+    }
+
+    @Override
+    public Course getCourse(String courseId) {
+        return shardFor(courseId).getCourse(courseId);
+    }
+
+    @Override
+    Course getCourse(int id) {
+        return shards[id % shards.length].getCourse(id);
+    }
+
+    @Override
+    ReentrantLock lockOf(Course course) {
+        return ownerOf(course).lockOf(course);
+    }
+
+    /**
+     * Shard by shard, then stripe by stripe, so that a sheet spanning shards locks in
+     * the same order as one within a shard.
+     */
+    @Override
+    int lockOrder(Course course) {
+        var shard = ownerOf(course);
+        return course.getId() % shards.length * shard.getLockStripeCount() + shard.lockOrder(course);
+    }
+
+    @Override
+    CourseManager ownerOf(Course course) {
+        return shards[course.getId() % shards.length];
+    }
+
+    @Override
+    public boolean enrollStudentInCourse(Student student, String courseId, int credits) {
+        return shardFor(courseId).enrollStudentInCourse(student, courseId, credits);
+    }
+
+    @Override
+    public boolean modifyStudentEnrollmentCredits(Student student, String courseId, int credits) {
+        return shardFor(courseId).modifyStudentEnrollmentCredits(student, courseId, credits);
+    }
+
+    @Override
+    public boolean dropStudentEnrollmentCourse(Student student, String courseId) {
+        return shardFor(courseId).dropStudentEnrollmentCourse(student, courseId);
+    }
+
+    @Override
+    public void setIntakeExecutor(Executor executor) {
+        for (var shard : shards) {
+            shard.setIntakeExecutor(executor);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Boolean> enrollStudentInCourseAsync(Student student, String courseId, int credits) {
+        return shardFor(courseId).enrollStudentInCourseAsync(student, courseId, credits);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> modifyStudentEnrollmentCreditsAsync(Student student, String courseId,
+                                                                         int credits) {
+        return shardFor(courseId).modifyStudentEnrollmentCreditsAsync(student, courseId, credits);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> dropStudentEnrollmentCourseAsync(Student student, String courseId) {
+        return shardFor(courseId).dropStudentEnrollmentCourseAsync(student, courseId);
+    }
+
+    @Override
+    public void finalizeEnrollments() {
+        super.setIfOpen(false);
+        for (var shard : shards) {
+            shard.finalizeEnrollments();
+        }
+    }
+
+    /**
+     * Finalize the shards one after another, each clearing its courses in parallel
+     * on pool.
+     */
+    @Override
+    public void finalizeEnrollments(ForkJoinPool pool) {
+        super.setIfOpen(false);
+        for (var shard : shards) {
+            shard.finalizeEnrollments(pool);
+        }
+    }
+
+    @Override
+    public void openNextRound() {
+        for (var shard : shards) {
+            shard.openNextRound();
+        }
+        super.setIfOpen(true);
+    }
+
+    /**
+     * The results of every shard merged into one index. The merge is redone only
+     * after some shard finalized again.
+     */
+    @Override
+    public EnrollmentResults getResults() {
+        var parts = new EnrollmentResults[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            parts[i] = shards[i].getResults();
+            if (parts[i] == null) {
+                return null;
+            }
+        }
+        var current = merged;
+        if (current != null && Arrays.equals(current.parts, parts)) {
+            return current.results;
+        }
+        current = new MergedResults(parts, EnrollmentResults.merge(parts, getResultCacheSize()));
+        merged = current;
+        return current.results;
+    }
+
+    @Override
+    public int getRound() {
+        return shards[0].getRound();
+    }
+
+    @Override
+    public boolean setMaxCapacity(String courseId, int maxCapacity) {
+        return shardFor(courseId).setMaxCapacity(courseId, maxCapacity);
+    }
+
+    @Override
+    public int getCutoffBid(String courseId) {
+        return shardFor(courseId).getCutoffBid(courseId);
+    }
+
+    @Override
+    public boolean isCutoffTied(String courseId) {
+        return shardFor(courseId).isCutoffTied(courseId);
+    }
+
+    /**
+     * Snapshot every shard and combine their courses, shard by shard, with the
+     * credits of the students. As for a single manager, the changed courses are
+     * copied one lock at a time first; then every stripe of every shard is taken in
+     * shard order, the order a spanning sheet locks in, the courses that changed
+     * again are copied and the credits read, so the snapshot is a consistent cut.
+     */
+    @Override
+    public TermSnapshot snapshot() {
+        var copies = new CourseSnapshot[shards.length][];
+        for (int i = 0; i < shards.length; i++) {
+            copies[i] = shards[i].copyCourses();
+        }
+        var students = getStudents();
+        var ids = new String[students.size()];
+        var credits = new int[ids.length];
+        boolean open;
+        for (var shard : shards) {
+            shard.lockAll();
+        }
+        try {
+            for (int i = 0; i < shards.length; i++) {
+                shards[i].recopyCourses(copies[i]);
+            }
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = students.get(i).getStudentID();
+                credits[i] = students.get(i).getCredits();
+            }
+            open = getIfOpen();
+        } finally {
+            for (var shard : shards) {
+                shard.unlockAll();
+            }
+        }
+        var courses = new ArrayList<CourseSnapshot>();
+        for (var shardCopies : copies) {
+            courses.addAll(Arrays.asList(shardCopies));
+        }
+        return new TermSnapshot(open, courses.toArray(new CourseSnapshot[0]), ids, credits);
+    }
+}
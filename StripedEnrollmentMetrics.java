@@ -0,0 +1,144 @@
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * EnrollmentMetrics backed by LongAdder counters and LatencyHistograms, cheap to
+ * update from many threads at once. Also readable over JMX once registered.
+ */
+public class StripedEnrollmentMetrics implements EnrollmentMetrics, EnrollmentMetricsMXBean {
+    private static final Operation[] OPERATIONS = Operation.values();
+    private static final RejectReason[] REASONS = RejectReason.values();
+
+    private final LongAdder[] successes = new LongAdder[OPERATIONS.length];
+    private final LongAdder[][] rejections = new LongAdder[OPERATIONS.length][REASONS.length];
+    private final LatencyHistogram[] latencies = new LatencyHistogram[OPERATIONS.length];
+    private final LatencyHistogram finalizeLatency = new LatencyHistogram();
+
+    public StripedEnrollmentMetrics() {
+        for (int op = 0; op < OPERATIONS.length; op++) {
+            successes[op] = new LongAdder();
+            latencies[op] = new LatencyHistogram();
+            for (int reason = 0; reason < REASONS.length; reason++) {
+                rejections[op][reason] = new LongAdder();
+            }
+        }
+    }
+
+    /**
+     * Register with the platform MBean server as
+     * CourseManager:type=EnrollmentMetrics,name=name.
+     */
+    public void register(String name) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                new ObjectName("CourseManager:type=EnrollmentMetrics,name=" + ObjectName.quote(name)));
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public void record(Operation operation, RejectReason rejection, long nanos) {
+        int op = operation.ordinal();
+        if (rejection == null) {
+            successes[op].increment();
+        } else {
+            rejections[op][rejection.ordinal()].increment();
+        }
+        latencies[op].record(nanos);
+    }
+
+    @Override
+    public void recordCourseFinalized(long nanos) {
+        finalizeLatency.record(nanos);
+    }
+
+    public long getSuccessCount(Operation operation) {
+        return successes[operation.ordinal()].sum();
+    }
+
+    public long getRejectionCount(Operation operation, RejectReason reason) {
+        return rejections[operation.ordinal()][reason.ordinal()].sum();
+    }
+
+    @Override
+    public long getEnrollCount() {
+        return getSuccessCount(Operation.ENROLL);
+    }
+
+    @Override
+    public long getModifyCount() {
+        return getSuccessCount(Operation.MODIFY);
+    }
+
+    @Override
+    public long getDropCount() {
+        return getSuccessCount(Operation.DROP);
+    }
+
+    @Override
+    public Map<String, Long> getRejectionCounts() {
+        var counts = new TreeMap<String, Long>();
+        for (var operation : OPERATIONS) {
+            for (var reason : REASONS) {
+                long count = getRejectionCount(operation, reason);
+                if (count > 0) {
+                    counts.put(operation + "/" + reason, count);
+                }
+            }
+        }
+        return counts;
+    }
+
+    @Override
+    public long getEnrollLatencyP50() {
+        return latencies[Operation.ENROLL.ordinal()].getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getEnrollLatencyP99() {
+        return latencies[Operation.ENROLL.ordinal()].getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getModifyLatencyP99() {
+        return latencies[Operation.MODIFY.ordinal()].getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getDropLatencyP99() {
+        return latencies[Operation.DROP.ordinal()].getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getFinalizedCourseCount() {
+        return finalizeLatency.getCount();
+    }
+
+    @Override
+    public long getFinalizeCourseLatencyP99() {
+        return finalizeLatency.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getLatencyPercentile(String operation, double percentile) {
+        return latencies[Operation.valueOf(operation).ordinal()].getValueAtPercentile(percentile);
+    }
+
+    @Override
+    public void reset() {
+        for (int op = 0; op < OPERATIONS.length; op++) {
+            successes[op].reset();
+            latencies[op].reset();
+            for (var counter : rejections[op]) {
+                counter.reset();
+            }
+        }
+        finalizeLatency.reset();
+    }
+}
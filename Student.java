@@ -1,29 +1,53 @@
 import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * A student handle. Bids live in the BidLedger of each course; the student only
+ * keeps the dense IDs of the courses it bid on and got into.
+ */
 public class Student {
-    private String studentID;
+    private final String studentID;
     private String email;
     private String name;
     private CourseManager courseManager;
-    private int credits;
-    private ArrayList<Course> enrollCourses;
-    private ArrayList<Course> successCourses;
+    private final CreditAccount credits;
+    private final CourseIdList enrollCourses;
+    private final CourseIdList successCourses;
+    /**
+     * Dense index in the CourseManager, assigned by addStudent. -1 until registered.
+     */
+    private int id = -1;
 
     public Student(String studentID, String email, String name, int credits) {
         this.studentID = studentID;
         this.email = email;
         this.name = name;
         this.courseManager = null;
-        this.credits = credits;
-        this.enrollCourses = new ArrayList<>();
-        this.successCourses = new ArrayList<>();
+        this.credits = new CreditAccount(credits);
+        this.enrollCourses = new CourseIdList();
+        this.successCourses = new CourseIdList();
     }
 
     public void setCourseManager(CourseManager courseManager) {
         this.courseManager = courseManager;
     }
 
-    public ArrayList<Course> getEnrollCourses() {
+    int getId() {
+        return id;
+    }
+
+    void setId(int id) {
+        this.id = id;
+    }
+
+    /**
+     * Read-only view of the courses the student bid on, in bidding order.
+     */
+    public List<Course> getEnrollCourses() {
+        return enrollCourses.view(courseManager);
+    }
+
+    CourseIdList getEnrollCourseIds() {
         return enrollCourses;
     }
 
@@ -31,8 +55,12 @@ public class Student {
         return courseManager.enrollStudentInCourse(this, courseId, credits);
     }
 
-    public void setEnrollCourses(ArrayList<Course> enrollCourses) {
-        this.enrollCourses = enrollCourses;
+    /**
+     * Replace the courses the student bid on. The courses must be registered with
+     * the student's CourseManager.
+     */
+    public void setEnrollCourses(List<Course> enrollCourses) {
+        copyIds(enrollCourses, this.enrollCourses);
     }
 
     public boolean modifyEnrollCredit(String courseId, int credits) {
@@ -43,20 +71,77 @@ public class Student {
         return courseManager.dropStudentEnrollmentCourse(this, courseId);
     }
 
+    /**
+     * Credits still available to bid.
+     */
     public int getCredits() {
-        return credits;
+        return credits.getAvailable();
     }
 
+    /**
+     * Credits committed to current bids and to seats held.
+     */
+    public int getCommittedCredits() {
+        return credits.getCommitted();
+    }
+
+    /**
+     * Replace the available credits. Committed credits are not touched.
+     */
     public void setCredits(int credits) {
-        this.credits = credits;
+        this.credits.setAvailable(credits);
+    }
+
+    CreditAccount getAccount() {
+        return credits;
+    }
+
+    /**
+     * Atomically commit amount of the available credits. A negative amount gives
+     * credits back. Return false, leaving the credits unchanged, if fewer than
+     * amount credits are available.
+     */
+    public boolean tryDebit(int amount) {
+        return credits.tryCommit(amount);
     }
 
-    public ArrayList<Course> getSuccessCourses() {
+    /**
+     * Atomically give amount of the committed credits back.
+     */
+    public void refund(int amount) {
+        credits.release(amount);
+    }
+
+    /**
+     * Read-only view of the courses the student got into, empty before
+     * finalization.
+     */
+    public List<Course> getSuccessCourses() {
+        return successCourses.view(courseManager);
+    }
+
+    CourseIdList getSuccessCourseIds() {
         return successCourses;
     }
 
-    public void setSuccessCourses(ArrayList<Course> successCourses) {
-        this.successCourses = successCourses;
+    /**
+     * Replace the courses the student got into. The courses must be registered with
+     * the student's CourseManager.
+     */
+    public void setSuccessCourses(List<Course> successCourses) {
+        copyIds(successCourses, this.successCourses);
+    }
+
+    private static void copyIds(List<Course> courses, CourseIdList ids) {
+        for (var course : courses) {
+            if (course.getId() < 0) {
+                throw new IllegalArgumentException("Course " + course.getCourseID() + " is not registered");
+            }
+        }
+        ids.clear();
+        for (var course : courses) {
+            ids.add(course.getId());
+        }
     }
 
     public ArrayList<String> getCoursesWithScores() {
@@ -66,4 +151,25 @@ public class Student {
     public String getStudentID() {
         return this.studentID;
     }
+
+    /**
+     * Students are equal when their student IDs are, like courses.
+     */
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof Student && studentID.equals(((Student) o).studentID);
+    }
+
+    @Override
+    public int hashCode() {
+        return studentID.hashCode();
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getName() {
+        return name;
+    }
 }
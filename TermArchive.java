@@ -0,0 +1,744 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Read-only archive of a finalized term, written from a TermSnapshot and read
+ * through a memory map.
+ * <p>
+ * Opening an archive maps it and reads a 64-byte header, nothing else. Courses and
+ * students are addressed by ordinal, their position in the archive; findCourse and
+ * findStudent map an ID to its ordinal through hash tables stored in the file,
+ * comparing the UTF-8 bytes in place. Every accessor reads the mapped bytes
+ * directly, so an archive of any size opens at once and the pages a query touches
+ * are the only ones loaded. Strings are only built for the IDs a caller asks for.
+ * <p>
+ * Layout, all big-endian:
+ * <pre>
+ * header       int magic, int version, int courseCount, int studentCount,
+ *              long courseOffsets, long studentOffsets,
+ *              long courseTable, int courseTableSize,
+ *              long studentTable, int studentTableSize, int ifOpen
+ * course       int maxCapacity, int cutoffBid, int cutoffTied, int bidCount,
+ *              int successCount, int seatCount, int waitlistCount,
+ *              bidCount x (int student, int bid), successCount x int student,
+ *              seatCount x (int student, int bid, int round),
+ *              waitlistCount x (int student, int bid),
+ *              UTF-8 courseID, UTF-8 courseName
+ * student      int credits, int bidCount, int successCount, int seatCount,
+ *              int waitlistCount, bidCount x (int course, int bid),
+ *              successCount x int course, seatCount x (int course, int bid, int round),
+ *              waitlistCount x (int course, int bid), UTF-8 studentID
+ * offsets      long per course, then long per student: start of the record
+ * tables       open addressing, int hash and int ordinal + 1 per bucket
+ * </pre>
+ * UTF-8 strings are a short byte length followed by the bytes. The file is mapped
+ * in 1 GiB segments, so archives larger than 2 GiB work too.
+ */
+public final class TermArchive implements AutoCloseable {
+    private static final int MAGIC = 0x54415243;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 64;
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+    /**
+     * The sections of a course or student record, in file order, and the ints per
+     * entry of each. The counts are consecutive ints in the same order.
+     */
+    private static final int BIDS = 0;
+    private static final int SUCCESS = 1;
+    private static final int SEATS = 2;
+    private static final int WAITLIST = 3;
+    private static final int ID = 4;
+    private static final int[] STRIDES = {2, 1, 3, 2};
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final int courseCount;
+    private final int studentCount;
+    private final long courseOffsets;
+    private final long studentOffsets;
+    private final long courseTable;
+    private final int courseTableSize;
+    private final long studentTable;
+    private final int studentTableSize;
+    private final boolean ifOpen;
+
+    private TermArchive(FileChannel channel, MappedByteBuffer[] segments) throws IOException {
+        this.channel = channel;
+        this.segments = segments;
+        if (channel.size() < HEADER_SIZE || getInt(0) != MAGIC || getInt(4) != VERSION) {
+            throw new IOException("Not a term archive");
+        }
+        courseCount = getInt(8);
+        studentCount = getInt(12);
+        courseOffsets = getLong(16);
+        studentOffsets = getLong(24);
+        courseTable = getLong(32);
+        courseTableSize = getInt(40);
+        studentTable = getLong(44);
+        studentTableSize = getInt(52);
+        ifOpen = getInt(56) != 0;
+    }
+
+    /**
+     * Map the archive in file. The file must not change while it is open.
+     */
+    public static TermArchive open(Path file) throws IOException {
+        var channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            var segments = new MappedByteBuffer[(int) ((size + SEGMENT_MASK) >>> SEGMENT_SHIFT)];
+            for (int i = 0; i < segments.length; i++) {
+                long start = (long) i << SEGMENT_SHIFT;
+                long length = Math.min(size - start, 1L << SEGMENT_SHIFT);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            }
+            return new TermArchive(channel, segments);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Close the file. The mapping itself is released when the archive is garbage
+     * collected, so no accessor may be called after close.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public boolean getIfOpen() {
+        return ifOpen;
+    }
+
+    public int getCourseCount() {
+        return courseCount;
+    }
+
+    public int getStudentCount() {
+        return studentCount;
+    }
+
+    /**
+     * Get the ordinal of courseId, or -1 if the term has no such course.
+     */
+    public int findCourse(String courseId) {
+        return find(courseTable, courseTableSize, courseOffsets, courseId, true);
+    }
+
+    /**
+     * Get the ordinal of studentId, or -1 if the term has no such student.
+     */
+    public int findStudent(String studentId) {
+        return find(studentTable, studentTableSize, studentOffsets, studentId, false);
+    }
+
+    public String getCourseId(int course) {
+        return getString(courseStringStart(course));
+    }
+
+    public String getCourseName(int course) {
+        long at = courseStringStart(course);
+        return getString(at + 2 + getUnsignedShort(at));
+    }
+
+    public int getMaxCapacity(int course) {
+        return getInt(courseRecord(course));
+    }
+
+    /**
+     * The highest bid left out when the term was archived, 0 if every bidder fit.
+     */
+    public int getCutoffBid(int course) {
+        return getInt(courseRecord(course) + 4);
+    }
+
+    public boolean isCutoffTied(int course) {
+        return getInt(courseRecord(course) + 8) != 0;
+    }
+
+    public int getBidCount(int course) {
+        return getInt(courseRecord(course) + 12);
+    }
+
+    /**
+     * Ordinal of the student who placed the i-th bid on course.
+     */
+    public int getBidStudent(int course, int i) {
+        return getInt(entry(courseRecord(course), true, BIDS, i));
+    }
+
+    public int getBid(int course, int i) {
+        return getInt(entry(courseRecord(course), true, BIDS, i) + 4);
+    }
+
+    public int getSuccessCount(int course) {
+        return getInt(courseRecord(course) + 16);
+    }
+
+    /**
+     * Ordinal of the i-th of the successStudents of course.
+     */
+    public int getSuccessStudent(int course, int i) {
+        return getInt(entry(courseRecord(course), true, SUCCESS, i));
+    }
+
+    /**
+     * Number of seats of course held from earlier rounds.
+     */
+    public int getSeatCount(int course) {
+        return getInt(courseRecord(course) + 20);
+    }
+
+    /**
+     * Ordinal of the student holding the i-th seat of course, in the order the
+     * seats were taken.
+     */
+    public int getSeatStudent(int course, int i) {
+        return getInt(entry(courseRecord(course), true, SEATS, i));
+    }
+
+    /**
+     * The bid that won the i-th seat of course.
+     */
+    public int getSeatBid(int course, int i) {
+        return getInt(entry(courseRecord(course), true, SEATS, i) + 4);
+    }
+
+    /**
+     * The round in which the i-th seat of course was won.
+     */
+    public int getSeatRound(int course, int i) {
+        return getInt(entry(courseRecord(course), true, SEATS, i) + 8);
+    }
+
+    public int getWaitlistCount(int course) {
+        return getInt(courseRecord(course) + 24);
+    }
+
+    /**
+     * Ordinal of the i-th waitlisted student of course, in the order they lost.
+     */
+    public int getWaitlistStudent(int course, int i) {
+        return getInt(entry(courseRecord(course), true, WAITLIST, i));
+    }
+
+    public int getWaitlistBid(int course, int i) {
+        return getInt(entry(courseRecord(course), true, WAITLIST, i) + 4);
+    }
+
+    public String getStudentId(int student) {
+        return getString(sectionStart(studentRecord(student), false, ID));
+    }
+
+    /**
+     * Credits the student had left when the term was archived.
+     */
+    public int getCredits(int student) {
+        return getInt(studentRecord(student));
+    }
+
+    public int getStudentBidCount(int student) {
+        return getInt(studentRecord(student) + 4);
+    }
+
+    /**
+     * Ordinal of the course of the i-th bid of student.
+     */
+    public int getStudentBidCourse(int student, int i) {
+        return getInt(entry(studentRecord(student), false, BIDS, i));
+    }
+
+    public int getStudentBid(int student, int i) {
+        return getInt(entry(studentRecord(student), false, BIDS, i) + 4);
+    }
+
+    public int getSuccessCourseCount(int student) {
+        return getInt(studentRecord(student) + 8);
+    }
+
+    /**
+     * Ordinal of the i-th of the successCourses of student.
+     */
+    public int getSuccessCourse(int student, int i) {
+        return getInt(entry(studentRecord(student), false, SUCCESS, i));
+    }
+
+    /**
+     * Number of seats student holds from earlier rounds.
+     */
+    public int getStudentSeatCount(int student) {
+        return getInt(studentRecord(student) + 12);
+    }
+
+    /**
+     * Ordinal of the course of the i-th seat of student.
+     */
+    public int getStudentSeatCourse(int student, int i) {
+        return getInt(entry(studentRecord(student), false, SEATS, i));
+    }
+
+    public int getStudentSeatBid(int student, int i) {
+        return getInt(entry(studentRecord(student), false, SEATS, i) + 4);
+    }
+
+    public int getStudentSeatRound(int student, int i) {
+        return getInt(entry(studentRecord(student), false, SEATS, i) + 8);
+    }
+
+    public int getStudentWaitlistCount(int student) {
+        return getInt(studentRecord(student) + 16);
+    }
+
+    /**
+     * Ordinal of the course of the i-th waitlist entry of student.
+     */
+    public int getStudentWaitlistCourse(int student, int i) {
+        return getInt(entry(studentRecord(student), false, WAITLIST, i));
+    }
+
+    public int getStudentWaitlistBid(int student, int i) {
+        return getInt(entry(studentRecord(student), false, WAITLIST, i) + 4);
+    }
+
+    /**
+     * IDs of the successStudents of courseId, read lazily; empty for an unknown
+     * course.
+     */
+    public List<String> getSuccessStudentIds(String courseId) {
+        int course = findCourse(courseId);
+        if (course < 0) {
+            return List.of();
+        }
+        int size = getSuccessCount(course);
+        return new AbstractList<>() {
+            @Override
+            public String get(int index) {
+                return getStudentId(getSuccessStudent(course, checkIndex(index, size)));
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * IDs of the successCourses of studentId, read lazily; empty for an unknown
+     * student.
+     */
+    public List<String> getSuccessCourseIds(String studentId) {
+        int student = findStudent(studentId);
+        if (student < 0) {
+            return List.of();
+        }
+        int size = getSuccessCourseCount(student);
+        return new AbstractList<>() {
+            @Override
+            public String get(int index) {
+                return getCourseId(getSuccessCourse(student, checkIndex(index, size)));
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private static int checkIndex(int index, int size) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        }
+        return index;
+    }
+
+    private long courseRecord(int course) {
+        if (course < 0 || course >= courseCount) {
+            throw new IndexOutOfBoundsException("Course " + course + ", count " + courseCount);
+        }
+        return getLong(courseOffsets + 8L * course);
+    }
+
+    private long studentRecord(int student) {
+        if (student < 0 || student >= studentCount) {
+            throw new IndexOutOfBoundsException("Student " + student + ", count " + studentCount);
+        }
+        return getLong(studentOffsets + 8L * student);
+    }
+
+    private long courseStringStart(int course) {
+        return sectionStart(courseRecord(course), true, ID);
+    }
+
+    /**
+     * Where section starts in the course or student record at an offset; for ID,
+     * where the ID starts.
+     */
+    private long sectionStart(long record, boolean course, int section) {
+        long counts = record + (course ? 12 : 4);
+        long at = counts + 4L * STRIDES.length;
+        for (int i = 0; i < section; i++) {
+            at += 4L * STRIDES[i] * getInt(counts + 4L * i);
+        }
+        return at;
+    }
+
+    /**
+     * Where the i-th entry of section starts in the record at an offset.
+     */
+    private long entry(long record, boolean course, int section, int i) {
+        return sectionStart(record, course, section) + 4L * STRIDES[section] * i;
+    }
+
+    private int find(long table, int tableSize, long offsets, String id, boolean course) {
+        if (tableSize == 0) {
+            return -1;
+        }
+        var key = id.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(id);
+        int mask = tableSize - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            long bucket = table + 8L * i;
+            int ordinal = getInt(bucket + 4) - 1;
+            if (ordinal < 0) {
+                return -1;
+            }
+            if (getInt(bucket) == hash && matches(sectionStart(getLong(offsets + 8L * ordinal), course, ID), key)) {
+                return ordinal;
+            }
+        }
+    }
+
+    private boolean matches(long at, byte[] key) {
+        if (getUnsignedShort(at) != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (getByte(at + 2 + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(String id) {
+        int h = id.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private byte getByte(long at) {
+        return segments[(int) (at >>> SEGMENT_SHIFT)].get((int) (at & SEGMENT_MASK));
+    }
+
+    /**
+     * Values are read from one segment unless they straddle two.
+     */
+    private int getInt(long at) {
+        int offset = (int) (at & SEGMENT_MASK);
+        var segment = segments[(int) (at >>> SEGMENT_SHIFT)];
+        if (offset + Integer.BYTES <= segment.limit()) {
+            return segment.getInt(offset);
+        }
+        int value = 0;
+        for (int i = 0; i < Integer.BYTES; i++) {
+            value = (value << 8) | (getByte(at + i) & 0xff);
+        }
+        return value;
+    }
+
+    private long getLong(long at) {
+        return ((long) getInt(at) << 32) | (getInt(at + 4) & 0xffffffffL);
+    }
+
+    private int getUnsignedShort(long at) {
+        return ((getByte(at) & 0xff) << 8) | (getByte(at + 1) & 0xff);
+    }
+
+    private String getString(long at) {
+        var bytes = new byte[getUnsignedShort(at)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = getByte(at + 2 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write snapshot, normally taken after finalizeEnrollments, to file as an
+     * archive, replacing the file.
+     */
+    public static void write(TermSnapshot snapshot, Path file) throws IOException {
+        int courseCount = snapshot.getCourseCount();
+        int studentCount = snapshot.getStudentCount();
+        var studentOrdinals = new HashMap<String, Integer>((int) (studentCount / 0.75f) + 1);
+        for (int s = 0; s < studentCount; s++) {
+            studentOrdinals.put(snapshot.getStudentId(s), s);
+        }
+
+        // Invert the per-course sections into per-student lists.
+        var bidStudents = new int[courseCount][];
+        var successStudents = new int[courseCount][];
+        var seatStudents = new int[courseCount][];
+        var waitlistStudents = new int[courseCount][];
+        var sections = new StudentSections(studentCount);
+        for (int c = 0; c < courseCount; c++) {
+            var course = snapshot.getCourse(c);
+            bidStudents[c] = sections.count(BIDS, ordinals(course.getStudentIds(), studentOrdinals));
+            successStudents[c] = sections.count(SUCCESS, ordinals(course.getSuccessStudentIds(), studentOrdinals));
+            seatStudents[c] = sections.count(SEATS, ordinals(course.getSeatStudentIds(), studentOrdinals));
+            waitlistStudents[c] = sections.count(WAITLIST,
+                    ordinals(course.getWaitlistStudentIds(), studentOrdinals));
+        }
+        sections.allocate();
+        for (int c = 0; c < courseCount; c++) {
+            var course = snapshot.getCourse(c);
+            for (int i = 0; i < bidStudents[c].length; i++) {
+                sections.add(BIDS, bidStudents[c][i], c, course.getBid(i), 0);
+            }
+            for (int s : successStudents[c]) {
+                sections.add(SUCCESS, s, c, 0, 0);
+            }
+            for (int i = 0; i < seatStudents[c].length; i++) {
+                sections.add(SEATS, seatStudents[c][i], c, course.getSeatBid(i), course.getSeatRound(i));
+            }
+            for (int i = 0; i < waitlistStudents[c].length; i++) {
+                sections.add(WAITLIST, waitlistStudents[c][i], c, course.getWaitlistBid(i), 0);
+            }
+        }
+
+        var courseOffsets = new long[courseCount];
+        var studentOffsets = new long[studentCount];
+        long courseTable;
+        long studentTable;
+        int courseTableSize = tableSize(courseCount);
+        int studentTableSize = tableSize(studentCount);
+        try (var out = new CountingOutput(Files.newOutputStream(file))) {
+            out.write(new byte[HEADER_SIZE]);
+            for (int c = 0; c < courseCount; c++) {
+                var course = snapshot.getCourse(c);
+                courseOffsets[c] = out.position();
+                out.writeInt(course.getMaxCapacity());
+                out.writeInt(course.getCutoffBid());
+                out.writeInt(course.isCutoffTied() ? 1 : 0);
+                out.writeInt(bidStudents[c].length);
+                out.writeInt(successStudents[c].length);
+                out.writeInt(seatStudents[c].length);
+                out.writeInt(waitlistStudents[c].length);
+                for (int i = 0; i < bidStudents[c].length; i++) {
+                    out.writeInt(bidStudents[c][i]);
+                    out.writeInt(course.getBid(i));
+                }
+                for (int s : successStudents[c]) {
+                    out.writeInt(s);
+                }
+                for (int i = 0; i < seatStudents[c].length; i++) {
+                    out.writeInt(seatStudents[c][i]);
+                    out.writeInt(course.getSeatBid(i));
+                    out.writeInt(course.getSeatRound(i));
+                }
+                for (int i = 0; i < waitlistStudents[c].length; i++) {
+                    out.writeInt(waitlistStudents[c][i]);
+                    out.writeInt(course.getWaitlistBid(i));
+                }
+                out.writeString(course.getCourseID());
+                out.writeString(course.getCourseName());
+            }
+            for (int s = 0; s < studentCount; s++) {
+                studentOffsets[s] = out.position();
+                out.writeInt(snapshot.getCredits(s));
+                sections.write(out, s);
+                out.writeString(snapshot.getStudentId(s));
+            }
+            long offsetsStart = out.position();
+            for (long offset : courseOffsets) {
+                out.writeLong(offset);
+            }
+            for (long offset : studentOffsets) {
+                out.writeLong(offset);
+            }
+            courseTable = out.position();
+            var ids = new String[courseCount];
+            for (int c = 0; c < courseCount; c++) {
+                ids[c] = snapshot.getCourse(c).getCourseID();
+            }
+            writeTable(out, ids, courseTableSize);
+            studentTable = out.position();
+            ids = new String[studentCount];
+            for (int s = 0; s < studentCount; s++) {
+                ids[s] = snapshot.getStudentId(s);
+            }
+            writeTable(out, ids, studentTableSize);
+
+            out.flush();
+            var header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(courseCount).putInt(studentCount)
+                    .putLong(offsetsStart).putLong(offsetsStart + 8L * courseCount)
+                    .putLong(courseTable).putInt(courseTableSize)
+                    .putLong(studentTable).putInt(studentTableSize)
+                    .putInt(snapshot.getIfOpen() ? 1 : 0);
+            header.clear();
+            try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.write(header, 0);
+            }
+        }
+    }
+
+    private static int[] ordinals(List<String> studentIds, HashMap<String, Integer> studentOrdinals) {
+        var result = new int[studentIds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = studentOrdinals.get(studentIds.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Power of two at least twice count, 0 for none.
+     */
+    private static int tableSize(int count) {
+        return count == 0 ? 0 : Integer.highestOneBit(count * 2 - 1) << 1;
+    }
+
+    private static void writeTable(CountingOutput out, String[] ids, int size) throws IOException {
+        var hashes = new int[size];
+        var ordinals = new int[size];
+        int mask = size - 1;
+        for (int ordinal = 0; ordinal < ids.length; ordinal++) {
+            int hash = hash(ids[ordinal]);
+            int i = hash & mask;
+            while (ordinals[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            hashes[i] = hash;
+            ordinals[i] = ordinal + 1;
+        }
+        for (int i = 0; i < size; i++) {
+            out.writeInt(hashes[i]);
+            out.writeInt(ordinals[i]);
+        }
+    }
+
+    /**
+     * The per-student lists of every section while an archive is written: counted
+     * course by course, then allocated and filled. Entries are STRIDES ints, the
+     * course ordinal first.
+     */
+    private static final class StudentSections {
+        private final int[][] counts;
+        private final int[][][] entries;
+
+        StudentSections(int studentCount) {
+            counts = new int[STRIDES.length][studentCount];
+            entries = new int[STRIDES.length][studentCount][];
+        }
+
+        /**
+         * Count the entries of one course in section. Returns students.
+         */
+        int[] count(int section, int[] students) {
+            for (int s : students) {
+                counts[section][s]++;
+            }
+            return students;
+        }
+
+        void allocate() {
+            for (int section = 0; section < STRIDES.length; section++) {
+                for (int s = 0; s < counts[section].length; s++) {
+                    entries[section][s] = new int[counts[section][s] * STRIDES[section]];
+                    counts[section][s] = 0;
+                }
+            }
+        }
+
+        void add(int section, int student, int course, int bid, int round) {
+            var list = entries[section][student];
+            int at = counts[section][student]++ * STRIDES[section];
+            list[at] = course;
+            if (STRIDES[section] > 1) {
+                list[at + 1] = bid;
+            }
+            if (STRIDES[section] > 2) {
+                list[at + 2] = round;
+            }
+        }
+
+        /**
+         * Write the counts and then the sections of student, as in its record.
+         */
+        void write(CountingOutput out, int student) throws IOException {
+            for (int section = 0; section < STRIDES.length; section++) {
+                out.writeInt(counts[section][student]);
+            }
+            for (var section : entries) {
+                for (int value : section[student]) {
+                    out.writeInt(value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Buffered DataOutputStream that knows its position past 2 GiB, unlike size().
+     */
+    private static final class CountingOutput extends DataOutputStream {
+        private final Counter counter;
+
+        CountingOutput(OutputStream out) {
+            this(new Counter(new BufferedOutputStream(out, 1 << 16)));
+        }
+
+        private CountingOutput(Counter counter) {
+            super(counter);
+            this.counter = counter;
+        }
+
+        long position() {
+            return counter.position;
+        }
+
+        void writeString(String value) throws IOException {
+            var bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > 0xffff) {
+                throw new IOException("ID or name too long: " + bytes.length + " bytes");
+            }
+            writeShort(bytes.length);
+            write(bytes);
+        }
+    }
+
+    private static final class Counter extends FilterOutputStream {
+        long position;
+
+        Counter(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            position++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            position += len;
+        }
+    }
+}
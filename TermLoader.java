@@ -0,0 +1,121 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Streaming importer of students, courses and existing bids.
+ * <p>
+ * The input is read line by line, so only the current line is held in memory.
+ * Each line is one record, with comma-separated fields that contain no commas:
+ * <pre>
+ * N,studentCount,courseCount          optional first line, to pre-size the manager
+ * C,courseID,courseName,maxCapacity
+ * S,studentID,email,name,credits
+ * B,studentID,courseID,credits
+ * </pre>
+ * Lines that are empty or start with '#' are skipped. Student credits are the
+ * budget before bidding; every B line debits it.
+ * <p>
+ * The input is trusted: IDs are unique, every bid refers to a student and course
+ * registered on an earlier line, no student bids twice on one course and bids fit
+ * the budget. Bids are therefore recorded without the checks of
+ * enrollStudentInCourse.
+ */
+class TermLoader {
+    private final CourseManager manager;
+    private final String[] fields = new String[5];
+    private long lineNumber;
+
+    private TermLoader(CourseManager manager) {
+        this.manager = manager;
+    }
+
+    public static CourseManager load(Path file) throws IOException {
+        var manager = new CourseManager();
+        try (var in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            load(in, manager);
+        }
+        return manager;
+    }
+
+    /**
+     * Load every record of in into manager. A manager with a journal is
+     * checkpointed afterwards, since the loaded bids are not journaled one by one.
+     */
+    public static void load(Reader in, CourseManager manager) throws IOException {
+        var loader = new TermLoader(manager);
+        var reader = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in, 1 << 16);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            loader.lineNumber++;
+            loader.parse(line);
+        }
+        if (manager instanceof JournaledCourseManager) {
+            ((JournaledCourseManager) manager).checkpoint();
+        }
+    }
+
+    private void parse(String line) throws IOException {
+        if (line.isEmpty() || line.charAt(0) == '#') {
+            return;
+        }
+        switch (line.charAt(0)) {
+            case 'N' -> {
+                split(line, 3);
+                manager.ensureCapacity(parseInt(fields[1]), parseInt(fields[2]));
+            }
+            case 'C' -> {
+                split(line, 4);
+                manager.addCourse(new Course(fields[1], fields[2], parseInt(fields[3])));
+            }
+            case 'S' -> {
+                split(line, 5);
+                manager.addStudent(new Student(fields[1], fields[2], fields[3], parseInt(fields[4])));
+            }
+            case 'B' -> {
+                split(line, 4);
+                var student = manager.getStudent(fields[1]);
+                var course = manager.getCourse(fields[2]);
+                if (student == null || course == null) {
+                    throw error("Bid on unknown student or course");
+                }
+                manager.restoreEnroll(student, course, parseInt(fields[3]));
+            }
+            default -> throw error("Unknown record type");
+        }
+    }
+
+    /**
+     * Split line into exactly count fields.
+     */
+    private void split(String line, int count) throws IOException {
+        int start = 0;
+        for (int i = 0; i < count - 1; i++) {
+            int comma = line.indexOf(',', start);
+            if (comma < 0) {
+                throw error("Expected " + count + " fields");
+            }
+            fields[i] = line.substring(start, comma);
+            start = comma + 1;
+        }
+        if (line.indexOf(',', start) >= 0) {
+            throw error("Expected " + count + " fields");
+        }
+        fields[count - 1] = line.substring(start);
+    }
+
+    private int parseInt(String field) throws IOException {
+        try {
+            return Integer.parseInt(field);
+        } catch (NumberFormatException e) {
+            throw error("Not a number: " + field);
+        }
+    }
+
+    private IOException error(String message) {
+        return new IOException("Line " + lineNumber + ": " + message);
+    }
+}
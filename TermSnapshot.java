@@ -0,0 +1,102 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Immutable view of a whole CourseManager, taken by CourseManager.snapshot().
+ * <p>
+ * A CourseSnapshot is only re-copied when its course changed since the previous
+ * snapshot, so consecutive snapshots share the copies of unchanged courses.
+ * Student balances are copied at one int per student. The snapshot is a
+ * consistent cut of courses and balances: they are read with every lock held,
+ * which blocks writers only while the courses changed in the meantime are copied
+ * and the balances read.
+ */
+public final class TermSnapshot {
+    private final boolean ifOpen;
+    private final CourseSnapshot[] courses;
+    private final String[] studentIds;
+    private final int[] credits;
+
+    private volatile HashMap<String, CourseSnapshot> courseIndex;
+    private volatile HashMap<String, Integer> studentIndex;
+
+    TermSnapshot(boolean ifOpen, CourseSnapshot[] courses, String[] studentIds, int[] credits) {
+        this.ifOpen = ifOpen;
+        this.courses = courses;
+        this.studentIds = studentIds;
+        this.credits = credits;
+    }
+
+    public boolean getIfOpen() {
+        return ifOpen;
+    }
+
+    public List<CourseSnapshot> getCourses() {
+        return Collections.unmodifiableList(Arrays.asList(courses));
+    }
+
+    int getCourseCount() {
+        return courses.length;
+    }
+
+    CourseSnapshot getCourse(int i) {
+        return courses[i];
+    }
+
+    /**
+     * Get a course by ID, or null. The index is built on first use.
+     */
+    public CourseSnapshot getCourse(String courseId) {
+        var index = courseIndex;
+        if (index == null) {
+            index = new HashMap<>();
+            for (var course : courses) {
+                index.put(course.getCourseID(), course);
+            }
+            courseIndex = index;
+        }
+        return index.get(courseId);
+    }
+
+    public int getStudentCount() {
+        return studentIds.length;
+    }
+
+    /**
+     * Student IDs in registration order. Shared with later snapshots, which is safe
+     * because students are only ever appended.
+     */
+    String[] getStudentIdArray() {
+        return studentIds;
+    }
+
+    public String getStudentId(int i) {
+        return studentIds[i];
+    }
+
+    /**
+     * Remaining credits of the i-th registered student.
+     */
+    public int getCredits(int i) {
+        return credits[i];
+    }
+
+    /**
+     * Remaining credits of a student by ID, or -1 if unknown. The index is built on
+     * first use.
+     */
+    public int getCredits(String studentId) {
+        var index = studentIndex;
+        if (index == null) {
+            index = new HashMap<>();
+            for (int i = 0; i < studentIds.length; i++) {
+                index.put(studentIds[i], i);
+            }
+            studentIndex = index;
+        }
+        Integer i = index.get(studentId);
+        return i == null ? -1 : credits[i];
+    }
+}
@@ -0,0 +1,212 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Replays a BidTrace against a fresh CourseManager, then finalizes, and reports
+ * throughput and latency percentiles. The trace is read from a file or generated
+ * from a SyntheticTerm, and a generated trace can be saved for later runs.
+ * <p>
+ * With threads=N the operations are split by student over N threads, each keeping
+ * the order of its students' operations. The final state then does not depend on
+ * the interleaving, and is checked against a single-threaded reference replay,
+ * which also warms up the JIT. The exit status is 1 if they differ.
+ * <p>
+ * Usage: {@code java BidReplay [trace=FILE] [record=FILE] [threads=N] [courses=N]
+ * [bidders=N] [skew=X] [burst=N] [churn=X] [seed=N]}
+ */
+public class BidReplay {
+    private String trace;
+    private String record;
+    private int threads = 1;
+    private int courses = 2000;
+    private int bidders = 40;
+    private double skew = 1.0;
+    private int burst = 16;
+    private double churn = 0.1;
+    private long seed = 42;
+
+    /**
+     * The manager after one replay and finalization, with timings.
+     */
+    static final class Run {
+        final CourseManager manager;
+        final long accepted;
+        final long replayNanos;
+        final long finalizeNanos;
+
+        Run(CourseManager manager, long accepted, long replayNanos, long finalizeNanos) {
+            this.manager = manager;
+            this.accepted = accepted;
+            this.replayNanos = replayNanos;
+            this.finalizeNanos = finalizeNanos;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        var replay = new BidReplay();
+        for (var arg : args) {
+            replay.parse(arg);
+        }
+        if (!replay.run()) {
+            System.exit(1);
+        }
+    }
+
+    private void parse(String arg) {
+        int eq = arg.indexOf('=');
+        if (eq < 0) {
+            throw new IllegalArgumentException("Expected name=value: " + arg);
+        }
+        String value = arg.substring(eq + 1);
+        switch (arg.substring(0, eq)) {
+            case "trace" -> trace = value;
+            case "record" -> record = value;
+            case "threads" -> threads = Integer.parseInt(value);
+            case "courses" -> courses = Integer.parseInt(value);
+            case "bidders" -> bidders = Integer.parseInt(value);
+            case "skew" -> skew = Double.parseDouble(value);
+            case "burst" -> burst = Integer.parseInt(value);
+            case "churn" -> churn = Double.parseDouble(value);
+            case "seed" -> seed = Long.parseLong(value);
+            default -> throw new IllegalArgumentException("Unknown parameter: " + arg);
+        }
+    }
+
+    private boolean run() throws IOException, InterruptedException {
+        var operations = trace != null ? BidTrace.read(Path.of(trace))
+                : BidTrace.generate(new SyntheticTerm(courses, bidders, skew, seed), burst, churn, seed);
+        if (record != null) {
+            operations.write(Path.of(record));
+        }
+        System.out.printf(Locale.ROOT, "courses=%d students=%d operations=%d threads=%d%n",
+                operations.getCourseCount(), operations.getStudentCount(), operations.size(), threads);
+
+        var reference = replay(operations, 1, null);
+        var latencies = new LatencyHistogram();
+        var run = replay(operations, threads, latencies);
+
+        System.out.printf(Locale.ROOT, "replay     %10.1f ms  %12.0f ops/s  (%d accepted)%n",
+                run.replayNanos / 1e6, operations.size() * 1e9 / Math.max(1, run.replayNanos), run.accepted);
+        System.out.printf(Locale.ROOT, "latency    p50=%d p90=%d p99=%d p99.9=%d max=%d ns%n",
+                latencies.getValueAtPercentile(50), latencies.getValueAtPercentile(90),
+                latencies.getValueAtPercentile(99), latencies.getValueAtPercentile(99.9),
+                latencies.getValueAtPercentile(100));
+        System.out.printf(Locale.ROOT, "finalize   %10.1f ms%n", run.finalizeNanos / 1e6);
+
+        var differences = compare(reference.manager, run.manager);
+        if (differences.isEmpty()) {
+            System.out.println("final state matches the reference replay");
+            return true;
+        }
+        System.out.println("final state differs from the reference replay:");
+        differences.forEach(difference -> System.out.println("  " + difference));
+        return false;
+    }
+
+    /**
+     * Replay trace on a new manager with threads threads, recording the latency of
+     * each operation in latencies unless it is null, then finalize.
+     */
+    static Run replay(BidTrace trace, int threads, LatencyHistogram latencies) throws InterruptedException {
+        var manager = new CourseManager();
+        var students = trace.register(manager);
+
+        var parts = new int[threads][];
+        var counts = new int[threads];
+        for (int i = 0; i < trace.size(); i++) {
+            counts[trace.getStudent(i) % threads]++;
+        }
+        for (int t = 0; t < threads; t++) {
+            parts[t] = new int[counts[t]];
+            counts[t] = 0;
+        }
+        for (int i = 0; i < trace.size(); i++) {
+            int t = trace.getStudent(i) % threads;
+            parts[t][counts[t]++] = i;
+        }
+
+        var executor = Executors.newFixedThreadPool(threads);
+        try {
+            var ready = new CountDownLatch(threads);
+            var go = new CountDownLatch(1);
+            var futures = new ArrayList<Future<Long>>();
+            for (var part : parts) {
+                futures.add(executor.submit((Callable<Long>) () -> {
+                    ready.countDown();
+                    go.await();
+                    long accepted = 0;
+                    for (int operation : part) {
+                        long start = latencies != null ? System.nanoTime() : 0;
+                        if (trace.apply(operation, manager, students)) {
+                            accepted++;
+                        }
+                        if (latencies != null) {
+                            latencies.record(System.nanoTime() - start);
+                        }
+                    }
+                    return accepted;
+                }));
+            }
+            ready.await();
+            long start = System.nanoTime();
+            go.countDown();
+            long accepted = 0;
+            for (var future : futures) {
+                accepted += future.get();
+            }
+            long replayNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            manager.finalizeEnrollments();
+            return new Run(manager, accepted, replayNanos, System.nanoTime() - start);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Replay failed", e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Describe how the finalized state of actual differs from that of reference:
+     * the students admitted to each course and the credits left to each student.
+     * Return at most 10 differences, none if they match.
+     */
+    static List<String> compare(CourseManager reference, CourseManager actual) {
+        var differences = new ArrayList<String>();
+        for (var course : reference.getCourses()) {
+            var other = actual.getCourse(course.getCourseID());
+            var expected = sortedIds(course.getSuccessStudents());
+            var found = other == null ? null : sortedIds(other.getSuccessStudents());
+            if (!Arrays.equals(expected, found)) {
+                differences.add(course.getCourseID() + " admitted " + Arrays.toString(found)
+                        + ", expected " + Arrays.toString(expected));
+            }
+        }
+        for (var student : reference.getStudents()) {
+            var other = actual.getStudent(student.getStudentID());
+            if (other == null || other.getCredits() != student.getCredits()) {
+                differences.add(student.getStudentID() + " has " + (other == null ? "no account" : other.getCredits()
+                        + " credits") + ", expected " + student.getCredits());
+            }
+        }
+        return differences.size() > 10 ? differences.subList(0, 10) : differences;
+    }
+
+    private static String[] sortedIds(List<Student> students) {
+        var ids = new String[students.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = students.get(i).getStudentID();
+        }
+        Arrays.sort(ids);
+        return ids;
+    }
+}
@@ -0,0 +1,382 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * A catalog, a roster and an ordered sequence of enroll, modify and drop
+ * operations, replayed by BidReplay.
+ * <p>
+ * A trace is either generated from a SyntheticTerm or recorded from the
+ * EnrollmentEventBus of a live manager. It is stored as a compact binary file:
+ * <pre>
+ * int magic
+ * varint courseCount, then per course: UTF courseID, varint maxCapacity
+ * varint studentCount, then per student: UTF studentID, varint credits
+ * varint operationCount, then per operation:
+ *     byte type, varint student, varint course[, varint credits unless DROP]
+ * </pre>
+ * Students and courses are referred to by their position in the catalog, so an
+ * operation usually takes 4 to 6 bytes.
+ */
+class BidTrace {
+    static final byte ENROLL = 0;
+    static final byte MODIFY = 1;
+    static final byte DROP = 2;
+
+    private static final int MAGIC = 0x42545231;
+
+    private final String[] courseIds;
+    private final int[] capacities;
+    private final String[] studentIds;
+    private final int[] studentCredits;
+
+    private byte[] types;
+    private int[] students;
+    private int[] courses;
+    private int[] credits;
+    private int size;
+
+    private BidTrace(String[] courseIds, int[] capacities, String[] studentIds, int[] studentCredits,
+                     int expectedOperations) {
+        this.courseIds = courseIds;
+        this.capacities = capacities;
+        this.studentIds = studentIds;
+        this.studentCredits = studentCredits;
+        int capacity = Math.max(16, expectedOperations);
+        types = new byte[capacity];
+        students = new int[capacity];
+        courses = new int[capacity];
+        credits = new int[capacity];
+    }
+
+    /**
+     * Generate the opening of bidding on term. Operations come in bursts of up to
+     * burst enrolls on one course, the course of each burst being drawn with the
+     * popularity of the term. After each enroll, with probability churn, the student
+     * changes or drops one of their earlier bids. The same arguments always give
+     * the same trace.
+     */
+    public static BidTrace generate(SyntheticTerm term, int burst, double churn, long seed) {
+        int courseCount = term.getCourseCount();
+        int studentCount = term.getStudentCount();
+        var courseIds = new String[courseCount];
+        var capacities = new int[courseCount];
+        for (int c = 0; c < courseCount; c++) {
+            courseIds[c] = SyntheticTerm.courseId(c);
+            capacities[c] = term.getCapacity();
+        }
+        var studentIds = new String[studentCount];
+        var studentCredits = new int[studentCount];
+        for (int s = 0; s < studentCount; s++) {
+            studentIds[s] = SyntheticTerm.studentId(s);
+            studentCredits[s] = SyntheticTerm.STUDENT_CREDITS;
+        }
+        int bidCount = term.getBidCount();
+        var trace = new BidTrace(courseIds, capacities, studentIds, studentCredits,
+                (int) (bidCount * (1 + churn)) + 16);
+
+        // Planned bids grouped by course, in planned order.
+        var start = new int[courseCount + 1];
+        for (int bid = 0; bid < bidCount; bid++) {
+            start[term.getBidCourse(bid) + 1]++;
+        }
+        for (int c = 0; c < courseCount; c++) {
+            start[c + 1] += start[c];
+        }
+        var cursor = Arrays.copyOf(start, courseCount);
+        var byCourse = new int[bidCount];
+        for (int bid = 0; bid < bidCount; bid++) {
+            byCourse[cursor[term.getBidCourse(bid)]++] = bid;
+        }
+        System.arraycopy(start, 0, cursor, 0, courseCount);
+
+        // Courses each student has bid on, for churn.
+        var held = new int[studentCount * SyntheticTerm.BIDS_PER_STUDENT];
+        var heldCount = new int[studentCount];
+
+        int maxBid = 2 * SyntheticTerm.STUDENT_CREDITS / SyntheticTerm.BIDS_PER_STUDENT - 1;
+        var random = new Random(seed);
+        var pool = new int[bidCount];
+        for (int i = 0; i < bidCount; i++) {
+            pool[i] = i;
+        }
+        // A bid drawn at random from those not placed yet picks each course with
+        // probability proportional to its remaining bidders.
+        var placed = new boolean[bidCount];
+        for (int remaining = bidCount; remaining > 0; ) {
+            int pick = random.nextInt(remaining);
+            int drawn = pool[pick];
+            pool[pick] = pool[--remaining];
+            if (placed[drawn]) {
+                continue;
+            }
+            int course = term.getBidCourse(drawn);
+            for (int n = 0; n < burst && cursor[course] < start[course + 1]; ) {
+                int bid = byCourse[cursor[course]++];
+                if (placed[bid]) {
+                    continue;
+                }
+                placed[bid] = true;
+                n++;
+                int student = term.getBidStudent(bid);
+                trace.add(ENROLL, student, course, term.getBidCredits(bid));
+                held[student * SyntheticTerm.BIDS_PER_STUDENT + heldCount[student]++] = course;
+                if (random.nextDouble() < churn) {
+                    int k = random.nextInt(heldCount[student]);
+                    int at = student * SyntheticTerm.BIDS_PER_STUDENT + k;
+                    if (random.nextBoolean()) {
+                        trace.add(MODIFY, student, held[at], 1 + random.nextInt(maxBid));
+                    } else {
+                        trace.add(DROP, student, held[at], 0);
+                        held[at] = held[student * SyntheticTerm.BIDS_PER_STUDENT + --heldCount[student]];
+                    }
+                }
+            }
+        }
+        return trace;
+    }
+
+    /**
+     * Start recording the enroll, modify and drop operations applied to manager,
+     * which must have an EnrollmentEventBus. The catalog and roster are taken from
+     * manager now, so recording should start before bidding. Only operations that
+     * succeeded are recorded, in the order they were published; replaying them gives
+     * the same state as long as each student's operations came from one thread.
+     */
+    public static Recorder record(CourseManager manager) {
+        var events = manager.getEventBus();
+        if (events == null) {
+            throw new IllegalStateException("Recording needs an event bus");
+        }
+        var courseList = manager.getCourses();
+        var courseIds = new String[courseList.size()];
+        var capacities = new int[courseIds.length];
+        for (int i = 0; i < courseIds.length; i++) {
+            courseIds[i] = courseList.get(i).getCourseID();
+            capacities[i] = courseList.get(i).getMaxCapacity();
+        }
+        var studentList = manager.getStudents();
+        var studentIds = new String[studentList.size()];
+        var studentCredits = new int[studentIds.length];
+        for (int i = 0; i < studentIds.length; i++) {
+            studentIds[i] = studentList.get(i).getStudentID();
+            studentCredits[i] = studentList.get(i).getCredits();
+        }
+        return new Recorder(new BidTrace(courseIds, capacities, studentIds, studentCredits, 1024),
+                events.subscribe());
+    }
+
+    /**
+     * Collects the operations published on an event bus into a trace. The bus makes
+     * bidding wait for subscribers, so drain must be called regularly while the
+     * manager is in use.
+     */
+    static final class Recorder implements AutoCloseable {
+        private final BidTrace trace;
+        private final EnrollmentEventBus.Subscription subscription;
+        private final HashMap<String, Integer> courseIndex = new HashMap<>();
+        private final HashMap<String, Integer> studentIndex = new HashMap<>();
+
+        private Recorder(BidTrace trace, EnrollmentEventBus.Subscription subscription) {
+            this.trace = trace;
+            this.subscription = subscription;
+            for (int i = 0; i < trace.courseIds.length; i++) {
+                courseIndex.put(trace.courseIds[i], i);
+            }
+            for (int i = 0; i < trace.studentIds.length; i++) {
+                studentIndex.put(trace.studentIds[i], i);
+            }
+        }
+
+        /**
+         * Record the events published so far. Return the number of events read.
+         */
+        public int drain() {
+            return subscription.poll(this::append);
+        }
+
+        private void append(EnrollmentEvent event) {
+            byte type;
+            switch (event.getType()) {
+                case ENROLL -> type = ENROLL;
+                case MODIFY -> type = MODIFY;
+                case DROP -> type = DROP;
+                default -> {
+                    return;
+                }
+            }
+            var student = studentIndex.get(event.getStudentId());
+            var course = courseIndex.get(event.getCourseId());
+            if (student == null || course == null) {
+                throw new IllegalStateException("Registered after recording started: " + event);
+            }
+            trace.add(type, student, course, type == DROP ? 0 : event.getCredits());
+        }
+
+        /**
+         * Record what is left, stop recording and return the trace.
+         */
+        public BidTrace finish() {
+            drain();
+            close();
+            return trace;
+        }
+
+        @Override
+        public void close() {
+            subscription.close();
+        }
+    }
+
+    private void add(byte type, int student, int course, int amount) {
+        if (size == types.length) {
+            int capacity = size + (size >> 1);
+            types = Arrays.copyOf(types, capacity);
+            students = Arrays.copyOf(students, capacity);
+            courses = Arrays.copyOf(courses, capacity);
+            credits = Arrays.copyOf(credits, capacity);
+        }
+        types[size] = type;
+        students[size] = student;
+        courses[size] = course;
+        credits[size] = amount;
+        size++;
+    }
+
+    public int getCourseCount() {
+        return courseIds.length;
+    }
+
+    public int getStudentCount() {
+        return studentIds.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public byte getType(int operation) {
+        return types[operation];
+    }
+
+    public int getStudent(int operation) {
+        return students[operation];
+    }
+
+    /**
+     * Register the catalog and roster in manager. Return the students in trace
+     * order, for apply.
+     */
+    public Student[] register(CourseManager manager) {
+        manager.ensureCapacity(studentIds.length, courseIds.length);
+        for (int c = 0; c < courseIds.length; c++) {
+            manager.addCourse(new Course(courseIds[c], courseIds[c], capacities[c]));
+        }
+        var registered = new Student[studentIds.length];
+        for (int s = 0; s < studentIds.length; s++) {
+            registered[s] = new Student(studentIds[s], studentIds[s] + "@example.com", studentIds[s],
+                    studentCredits[s]);
+            manager.addStudent(registered[s]);
+        }
+        return registered;
+    }
+
+    /**
+     * Apply one operation to manager, whose students were registered by register.
+     * Return whether it succeeded.
+     */
+    public boolean apply(int operation, CourseManager manager, Student[] registered) {
+        var student = registered[students[operation]];
+        var courseId = courseIds[courses[operation]];
+        return switch (types[operation]) {
+            case ENROLL -> manager.enrollStudentInCourse(student, courseId, credits[operation]);
+            case MODIFY -> manager.modifyStudentEnrollmentCredits(student, courseId, credits[operation]);
+            default -> manager.dropStudentEnrollmentCourse(student, courseId);
+        };
+    }
+
+    public void write(Path file) throws IOException {
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            writeVarInt(out, courseIds.length);
+            for (int c = 0; c < courseIds.length; c++) {
+                out.writeUTF(courseIds[c]);
+                writeVarInt(out, capacities[c]);
+            }
+            writeVarInt(out, studentIds.length);
+            for (int s = 0; s < studentIds.length; s++) {
+                out.writeUTF(studentIds[s]);
+                writeVarInt(out, studentCredits[s]);
+            }
+            writeVarInt(out, size);
+            for (int i = 0; i < size; i++) {
+                out.writeByte(types[i]);
+                writeVarInt(out, students[i]);
+                writeVarInt(out, courses[i]);
+                if (types[i] != DROP) {
+                    writeVarInt(out, credits[i]);
+                }
+            }
+        }
+    }
+
+    public static BidTrace read(Path file) throws IOException {
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a bid trace: " + file);
+            }
+            var courseIds = new String[readVarInt(in)];
+            var capacities = new int[courseIds.length];
+            for (int c = 0; c < courseIds.length; c++) {
+                courseIds[c] = in.readUTF();
+                capacities[c] = readVarInt(in);
+            }
+            var studentIds = new String[readVarInt(in)];
+            var studentCredits = new int[studentIds.length];
+            for (int s = 0; s < studentIds.length; s++) {
+                studentIds[s] = in.readUTF();
+                studentCredits[s] = readVarInt(in);
+            }
+            int size = readVarInt(in);
+            var trace = new BidTrace(courseIds, capacities, studentIds, studentCredits, size);
+            for (int i = 0; i < size; i++) {
+                byte type = in.readByte();
+                int student = readVarInt(in);
+                int course = readVarInt(in);
+                if (type < ENROLL || type > DROP || student < 0 || student >= studentIds.length
+                        || course < 0 || course >= courseIds.length) {
+                    throw new IOException("Corrupt operation " + i + " in " + file);
+                }
+                trace.add(type, student, course, type == DROP ? 0 : readVarInt(in));
+            }
+            return trace;
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
@@ -0,0 +1,73 @@
+import java.util.concurrent.ForkJoinPool;
+
+import bench.Workload;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The hot paths measured by bench.CourseManagerBenchmark, run on a SyntheticTerm.
+ * One call is a pass over the whole term: every planned bid for enroll, modify and
+ * drop, and every student for the query.
+ */
+public class CourseManagerWorkload implements Workload {
+    private SyntheticTerm term;
+
+    @Override
+    public void setUp(int courses, int bidders, double skew, long seed) {
+        term = new SyntheticTerm(courses, bidders, skew, seed);
+    }
+
+    @Override
+    public Object build(boolean placeBids) {
+        return term.build(placeBids);
+    }
+
+    @Override
+    public void enroll(Object manager, Blackhole blackhole) {
+        var courseManager = (CourseManager) manager;
+        var students = courseManager.getStudents();
+        for (int bid = 0; bid < term.getBidCount(); bid++) {
+            var student = students.get(term.getBidStudent(bid));
+            blackhole.consume(courseManager.enrollStudentInCourse(student, term.getBidCourseId(bid),
+                    term.getBidCredits(bid)));
+        }
+    }
+
+    @Override
+    public void modify(Object manager, Blackhole blackhole) {
+        var courseManager = (CourseManager) manager;
+        var students = courseManager.getStudents();
+        for (int bid = 0; bid < term.getBidCount(); bid++) {
+            var student = students.get(term.getBidStudent(bid));
+            blackhole.consume(courseManager.modifyStudentEnrollmentCredits(student, term.getBidCourseId(bid),
+                    term.getBidCredits(bid) / 2));
+        }
+    }
+
+    @Override
+    public void drop(Object manager, Blackhole blackhole) {
+        var courseManager = (CourseManager) manager;
+        var students = courseManager.getStudents();
+        for (int bid = 0; bid < term.getBidCount(); bid++) {
+            var student = students.get(term.getBidStudent(bid));
+            blackhole.consume(courseManager.dropStudentEnrollmentCourse(student, term.getBidCourseId(bid)));
+        }
+    }
+
+    @Override
+    public void query(Object manager, Blackhole blackhole) {
+        var courseManager = (CourseManager) manager;
+        for (var student : courseManager.getStudents()) {
+            blackhole.consume(courseManager.getEnrolledCoursesWithCredits(student));
+        }
+    }
+
+    @Override
+    public void finalizeEnrollments(Object manager) {
+        ((CourseManager) manager).finalizeEnrollments();
+    }
+
+    @Override
+    public void finalizeEnrollmentsParallel(Object manager) {
+        ((CourseManager) manager).finalizeEnrollments(ForkJoinPool.commonPool());
+    }
+}
@@ -0,0 +1,156 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Reproducible synthetic term for benchmarks: a catalog of courses, a roster of
+ * students and a planned bid sheet for every student. Course popularity follows a
+ * Zipf distribution, so a few courses draw most of the bidders when skew is high.
+ * The same arguments always give the same term.
+ */
+class SyntheticTerm {
+    public static final int STUDENT_CREDITS = 1000;
+    public static final int BIDS_PER_STUDENT = 8;
+
+    private final int courseCount;
+    private final int studentCount;
+    private final int capacity;
+
+    /**
+     * Planned bids, in submission order: bid i is student bidStudent[i] bidding
+     * bidCredits[i] on course bidCourse[i].
+     */
+    private final int[] bidStudent;
+    private final int[] bidCourse;
+    private final int[] bidCredits;
+
+    /**
+     * @param courseCount      number of courses in the catalog
+     * @param biddersPerCourse average number of bidders per course
+     * @param skew             Zipf exponent of course popularity, 0 for uniform
+     * @param seed             seed of all random choices
+     */
+    public SyntheticTerm(int courseCount, int biddersPerCourse, double skew, long seed) {
+        this.courseCount = courseCount;
+        this.studentCount = Math.max(1, (int) ((long) courseCount * biddersPerCourse / BIDS_PER_STUDENT));
+        this.capacity = Math.max(1, biddersPerCourse / 2);
+
+        var random = new Random(seed);
+        var popularity = new Zipf(courseCount, skew);
+        int bidCount = studentCount * Math.min(BIDS_PER_STUDENT, courseCount);
+        bidStudent = new int[bidCount];
+        bidCourse = new int[bidCount];
+        bidCredits = new int[bidCount];
+
+        var picked = new int[Math.min(BIDS_PER_STUDENT, courseCount)];
+        int bid = 0;
+        for (int s = 0; s < studentCount; s++) {
+            for (int k = 0; k < picked.length; k++) {
+                int course;
+                do {
+                    course = popularity.sample(random);
+                } while (contains(picked, k, course));
+                picked[k] = course;
+                bidStudent[bid] = s;
+                bidCourse[bid] = course;
+                bidCredits[bid] = 1 + random.nextInt(2 * STUDENT_CREDITS / BIDS_PER_STUDENT - 1);
+                bid++;
+            }
+        }
+    }
+
+    public int getCourseCount() {
+        return courseCount;
+    }
+
+    public int getStudentCount() {
+        return studentCount;
+    }
+
+    public int getBidCount() {
+        return bidCredits.length;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public static String courseId(int course) {
+        return "C" + course;
+    }
+
+    public static String studentId(int student) {
+        return "S" + student;
+    }
+
+    public int getBidStudent(int bid) {
+        return bidStudent[bid];
+    }
+
+    public int getBidCourse(int bid) {
+        return bidCourse[bid];
+    }
+
+    public String getBidCourseId(int bid) {
+        return courseId(bidCourse[bid]);
+    }
+
+    public int getBidCredits(int bid) {
+        return bidCredits[bid];
+    }
+
+    /**
+     * Register the catalog and roster in a new manager. If placeBids is true, also
+     * submit every planned bid; bids that would exceed the student's credits fail
+     * as they would in a real term.
+     */
+    public CourseManager build(boolean placeBids) {
+        var manager = new CourseManager();
+        for (int c = 0; c < courseCount; c++) {
+            manager.addCourse(new Course(courseId(c), "Course " + c, capacity));
+        }
+        for (int s = 0; s < studentCount; s++) {
+            String id = studentId(s);
+            manager.addStudent(new Student(id, id + "@example.com", "Student " + s, STUDENT_CREDITS));
+        }
+        if (placeBids) {
+            var students = manager.getStudents();
+            for (int bid = 0; bid < bidCredits.length; bid++) {
+                students.get(bidStudent[bid]).enrollCourse(courseId(bidCourse[bid]), bidCredits[bid]);
+            }
+        }
+        return manager;
+    }
+
+    private static boolean contains(int[] values, int length, int value) {
+        for (int i = 0; i < length; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Zipf sampler over 0..n-1 by binary search over the cumulative weights.
+     */
+    static class Zipf {
+        private final double[] cumulative;
+
+        Zipf(int n, double skew) {
+            cumulative = new double[n];
+            double sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += 1 / Math.pow(i + 1, skew);
+                cumulative[i] = sum;
+            }
+            for (int i = 0; i < n; i++) {
+                cumulative[i] /= sum;
+            }
+        }
+
+        int sample(Random random) {
+            int i = Arrays.binarySearch(cumulative, random.nextDouble());
+            return Math.min(i < 0 ? -i - 1 : i, cumulative.length - 1);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * JMH benchmarks of the bidding hot paths on a SyntheticTerm, see
+ * CourseManagerWorkload. One operation is a pass over the whole term. Managers
+ * that an operation changes are rebuilt before each invocation, outside the
+ * measured time.
+ * <p>
+ * Usage: {@code mvn test-compile exec:exec [-Djmh.args="-p skew=0,1.5 -f 2"]}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CourseManagerBenchmark {
+    @Param("2000")
+    public int courses;
+    @Param("40")
+    public int bidders;
+    @Param("1.0")
+    public double skew;
+    @Param("42")
+    public long seed;
+
+    private Workload workload;
+    /**
+     * Enrolled manager for the read-only query benchmark.
+     */
+    private Object enrolled;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ReflectiveOperationException {
+        workload = (Workload) Class.forName("CourseManagerWorkload").getConstructor().newInstance();
+        workload.setUp(courses, bidders, skew, seed);
+        enrolled = workload.build(true);
+    }
+
+    /**
+     * A manager with the students registered and no bids yet, fresh for every
+     * invocation.
+     */
+    @State(Scope.Thread)
+    public static class Empty {
+        Object manager;
+
+        @Setup(Level.Invocation)
+        public void build(CourseManagerBenchmark benchmark) {
+            manager = benchmark.workload.build(false);
+        }
+    }
+
+    /**
+     * A manager holding every planned bid, fresh for every invocation.
+     */
+    @State(Scope.Thread)
+    public static class Enrolled {
+        Object manager;
+
+        @Setup(Level.Invocation)
+        public void build(CourseManagerBenchmark benchmark) {
+            manager = benchmark.workload.build(true);
+        }
+    }
+
+    @Benchmark
+    public void enrollStudentInCourse(Empty state, Blackhole blackhole) {
+        workload.enroll(state.manager, blackhole);
+    }
+
+    @Benchmark
+    public void modifyStudentEnrollmentCredits(Enrolled state, Blackhole blackhole) {
+        workload.modify(state.manager, blackhole);
+    }
+
+    @Benchmark
+    public void dropStudentEnrollmentCourse(Enrolled state, Blackhole blackhole) {
+        workload.drop(state.manager, blackhole);
+    }
+
+    @Benchmark
+    public void getEnrolledCoursesWithCredits(Blackhole blackhole) {
+        workload.query(enrolled, blackhole);
+    }
+
+    @Benchmark
+    public Object finalizeEnrollments(Enrolled state) {
+        workload.finalizeEnrollments(state.manager);
+        return state.manager;
+    }
+
+    @Benchmark
+    public Object finalizeEnrollmentsParallel(Enrolled state) {
+        workload.finalizeEnrollmentsParallel(state.manager);
+        return state.manager;
+    }
+}
@@ -0,0 +1,30 @@
+package bench;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The operations CourseManagerBenchmark measures. JMH only accepts benchmarks in
+ * a named package, and code there cannot name the classes of the default package,
+ * so the work itself is done by CourseManagerWorkload behind this interface. The
+ * managers it builds are passed around as Object.
+ */
+public interface Workload {
+    void setUp(int courses, int bidders, double skew, long seed);
+
+    /**
+     * A new manager for the term, holding every planned bid if placeBids.
+     */
+    Object build(boolean placeBids);
+
+    void enroll(Object manager, Blackhole blackhole);
+
+    void modify(Object manager, Blackhole blackhole);
+
+    void drop(Object manager, Blackhole blackhole);
+
+    void query(Object manager, Blackhole blackhole);
+
+    void finalizeEnrollments(Object manager);
+
+    void finalizeEnrollmentsParallel(Object manager);
+}